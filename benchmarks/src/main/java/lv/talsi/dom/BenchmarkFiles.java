@@ -0,0 +1,33 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Palīgmetodes pagaidu mapēm veiktspējas testos.
+ */
+final class BenchmarkFiles {
+
+    // Paplašinājumi, kādi parasti ir ekrānu mapēs (ieskaitot ne-attēlus)
+    static final String[] EXTENSIONS = { ".jpg", ".JPEG", ".png", ".gif", ".bmp", ".txt", ".jpg", ".png", ".db", ".jpg" };
+
+    private BenchmarkFiles() {
+    }
+
+    static void deleteRecursively(Path folder) throws IOException {
+        if (folder == null || !Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    static void clearFolder(Path folder) throws IOException {
+        deleteRecursively(folder);
+        Files.createDirectories(folder);
+    }
+}
@@ -0,0 +1,95 @@
+package lv.talsi.dom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kataloga kārtošana un atjaunināšana: pilna kārtošana, salīdzināšana bez
+ * izmaiņām un jauna saraksta izveide pēc ~1% izmaiņām.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Dprism.order=sw" })
+public class CatalogBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int size;
+
+    private List<ImageInfo> shuffled;
+    private List<ImageInfo> current;
+    private List<ImageInfo> unchanged;
+    private List<ImageInfo> changed;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        current = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            current.add(image(i, 1_000_000L + i));
+        }
+        current.sort(CatalogDiff.ORDER);
+
+        shuffled = new ArrayList<>(current);
+        Collections.shuffle(shuffled, random);
+
+        // Tas pats saturs, bet jauni objekti (kā pēc atkārtotas pārskatīšanas)
+        unchanged = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            unchanged.add(image(i, 1_000_000L + i));
+        }
+
+        // ~1% mainīti, ~1% izdzēsti, ~1% jauni
+        changed = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i % 100 == 1) {
+                continue;
+            }
+            changed.add(image(i, i % 100 == 0 ? 2_000_000L + i : 1_000_000L + i));
+        }
+        for (int i = 0; i <= size / 100; i++) {
+            changed.add(image(size + i, 3_000_000L + i));
+        }
+        changed.sort(CatalogDiff.ORDER);
+    }
+
+    private static ImageInfo image(int index, long lastModified) {
+        String name = String.format("poster_%05d.jpg", index);
+        return new ImageInfo(name, ImageInfo.Source.LOCAL, "/images/" + name, lastModified, 100_000L + index);
+    }
+
+    @Benchmark
+    public List<ImageInfo> sortCatalog() {
+        List<ImageInfo> copy = new ArrayList<>(shuffled);
+        copy.sort(CatalogDiff.ORDER);
+        return copy;
+    }
+
+    @Benchmark
+    public boolean diffUnchanged() {
+        return CatalogDiff.compare(current, unchanged).isEmpty();
+    }
+
+    @Benchmark
+    public Playlist rebuildChanged() {
+        return new Playlist(CatalogDiff.compare(current, changed).apply(current));
+    }
+}
@@ -0,0 +1,83 @@
+package lv.talsi.dom;
+
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ImageDecoder} caurlaidspēja JPEG/PNG/GIF/BMP failiem dažādās
+ * izšķirtspējās, dekodējot 1920x1000 ekrānam.
+ *
+ * Atmiņas piešķiršanas ātrumu rāda GC profilētājs:
+ * {@code java -jar target/benchmarks.jar DecodeBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Dprism.order=sw", "-Xmx1g" })
+public class DecodeBenchmark {
+
+    @Param({ "jpg", "png", "gif", "bmp" })
+    public String format;
+
+    @Param({ "640x480", "1920x1080", "4000x3000" })
+    public String resolution;
+
+    private byte[] data;
+    private ImageDecoder decoder;
+
+    @Setup
+    public void setup() throws IOException {
+        String[] size = resolution.split("x");
+        BufferedImage source = syntheticImage(Integer.parseInt(size[0]), Integer.parseInt(size[1]), new Random(42));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!ImageIO.write(source, format, output)) {
+            throw new IllegalStateException("Nav ImageIO rakstītāja formātam " + format);
+        }
+        data = output.toByteArray();
+
+        decoder = new ImageDecoder(100_000_000L, 8_300_000L);
+        decoder.setTargetSize(1920, 1000);
+    }
+
+    /**
+     * Gradients ar troksni, lai saspiešana būtu līdzīga fotogrāfijām.
+     */
+    private static BufferedImage syntheticImage(int width, int height, Random random) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(16)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(16)) & 0xFF;
+                int b = ((x + y) * 255 / (width + height) + random.nextInt(16)) & 0xFF;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    @Benchmark
+    public Image decode() throws IOException {
+        return decoder.decode(new ByteArrayInputStream(data));
+    }
+}
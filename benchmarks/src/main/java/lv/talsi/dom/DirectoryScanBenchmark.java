@@ -0,0 +1,70 @@
+package lv.talsi.dom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lokālās mapes pārskatīšana ({@link LocalImageFolder#scan()}) un
+ * paplašinājumu filtrs mapēm ar 10, 1000 un 10000 failiem.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Dprism.order=sw" })
+public class DirectoryScanBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int files;
+
+    private Path folder;
+    private String[] names;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("bench-scan");
+        names = new String[files];
+        for (int i = 0; i < files; i++) {
+            names[i] = String.format("poster_%05d%s", i, BenchmarkFiles.EXTENSIONS[i % BenchmarkFiles.EXTENSIONS.length]);
+            Files.write(folder.resolve(names[i]), new byte[] { 1 });
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(folder);
+    }
+
+    @Benchmark
+    public List<ImageInfo> scanFolder() {
+        return new LocalImageFolder(folder.toFile()).scan();
+    }
+
+    @Benchmark
+    public int filterExtensions() {
+        int count = 0;
+        for (String name : names) {
+            if (ImageInfo.isImageFile(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
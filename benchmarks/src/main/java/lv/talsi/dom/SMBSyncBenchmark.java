@@ -0,0 +1,116 @@
+package lv.talsi.dom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SMB saraksts un lejupielāde spogulī, izmantojot {@link FolderSMBImageClient}
+ * (lokāla mape SMB servera vietā): saraksta iegūšana, sinhronizācija bez
+ * izmaiņām un pilna paralēla lejupielāde tukšā spogulī.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Dprism.order=sw" })
+public class SMBSyncBenchmark {
+
+    private static final int FILE_SIZE = 256 * 1024;
+
+    @Param({ "10", "1000" })
+    public int files;
+
+    private Path share;
+    private Path syncedMirrorFolder;
+    private FolderSMBImageClient client;
+    private SMBMirror syncedMirror;
+    private List<SMBImageClient.SMBImageInfo> listing;
+
+    @Setup
+    public void setup() throws IOException {
+        share = Files.createTempDirectory("bench-share");
+        Random random = new Random(42);
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < files; i++) {
+            random.nextBytes(content);
+            Files.write(share.resolve(String.format("poster_%05d.jpg", i)), content);
+        }
+
+        client = new FolderSMBImageClient(new Properties(), share.toFile());
+        listing = client.listImages();
+
+        syncedMirrorFolder = Files.createTempDirectory("bench-mirror");
+        syncedMirror = new SMBMirror(mirrorConfig(syncedMirrorFolder));
+        syncedMirror.sync(listing, client);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(share);
+        BenchmarkFiles.deleteRecursively(syncedMirrorFolder);
+    }
+
+    static Properties mirrorConfig(Path folder) {
+        Properties config = new Properties();
+        config.setProperty("smb.mirror.folder", folder.toString());
+        return config;
+    }
+
+    /**
+     * Tukšs spogulis katram mērījumam.
+     */
+    @State(Scope.Thread)
+    public static class EmptyMirror {
+        Path folder;
+        SMBMirror mirror;
+
+        @Setup(Level.Invocation)
+        public void setup() throws IOException {
+            if (folder == null) {
+                folder = Files.createTempDirectory("bench-empty-mirror");
+            }
+            BenchmarkFiles.clearFolder(folder);
+            mirror = new SMBMirror(mirrorConfig(folder));
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            BenchmarkFiles.deleteRecursively(folder);
+        }
+    }
+
+    @Benchmark
+    public List<SMBImageClient.SMBImageInfo> listImages() {
+        return client.listImages();
+    }
+
+    @Benchmark
+    public boolean syncUnchanged() {
+        return syncedMirror.sync(listing, client);
+    }
+
+    @Benchmark
+    public boolean downloadAll(EmptyMirror empty) {
+        return empty.mirror.sync(listing, client);
+    }
+}
@@ -0,0 +1,391 @@
+package lv.talsi.dom;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Animēts GIF, kas tiek dekodēts pa vienam kadram un tikai tad, kamēr tas redzams.
+ *
+ * Attēls pats ir ekrāna izmēra {@link WritableImage} ar pirmo kadru. Kamēr tas
+ * tiek rādīts, fona pavediens nolasa nākamos kadrus no faila, saliek tos ekrāna
+ * izmēra kanvā un ieliek ierobežotā buferī ({@value #FRAME_BUFFERS} kadri), no
+ * kura JavaFX pavediens tos parāda pēc GIF norādītās aiztures. Atmiņā nekad nav
+ * visi kadri vai avota izmēra kanva.
+ *
+ * Atkārtojumu skaits tiek ņemts no NETSCAPE2.0 paplašinājuma (0 - bezgalīgi,
+ * bez paplašinājuma - viena reize); pēc pēdējā atkārtojuma paliek pēdējais kadrs.
+ *
+ * {@link #play()} un {@link #stop()} jāizsauc no JavaFX pavediena; vienu attēlu
+ * drīkst rādīt vairāki ekrāni vienlaicīgi.
+ */
+class AnimatedGifImage extends WritableImage {
+
+    private static final int FRAME_BUFFERS = 3;
+    // Pārlūki īsāku aizturi uzskata par kļūdainu un rāda 100 ms
+    private static final int MIN_DELAY_MILLIS = 20;
+    private static final int DEFAULT_DELAY_MILLIS = 100;
+    private static final WritablePixelFormat<IntBuffer> FORMAT = PixelFormat.getIntArgbPreInstance();
+    // Animācijas beigas (Compositor.next)
+    private static final int END = -1;
+
+    // Kopīgi dekodēšanas pavedieni visām animācijām
+    private static final AtomicInteger DECODER_COUNTER = new AtomicInteger();
+    private static final ExecutorService DECODERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "gif-animation-" + DECODER_COUNTER.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path file;
+    private final int width;
+    private final int height;
+    private final double scale;
+
+    private int viewers;
+    private Playback playback;
+
+    /**
+     * @param scale mērogs no GIF loģiskā ekrāna uz width x height
+     */
+    AnimatedGifImage(Path file, int width, int height, double scale) {
+        super(width, height);
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+    }
+
+    /**
+     * Atver GIF, ja tajā ir vairāk nekā viens kadrs, un nolasa pirmo kadru.
+     *
+     * @return null, ja GIF nav animēts
+     */
+    static AnimatedGifImage open(Path file, ImageReader reader, ImageDecoder decoder) throws IOException {
+        try {
+            reader.getWidth(1);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+
+        int[] screen = logicalScreenSize(reader);
+        double scale = decoder.scaleFor(screen[0], screen[1]);
+        int width = (int) Math.max(1, Math.floor(screen[0] * scale));
+        int height = (int) Math.max(1, Math.floor(screen[1] * scale));
+
+        AnimatedGifImage image = new AnimatedGifImage(file, width, height, scale);
+        int[] pixels = new int[width * height];
+        try (Compositor compositor = new Compositor(file, width, height, scale)) {
+            compositor.next(pixels);
+        }
+        image.getPixelWriter().setPixels(0, 0, width, height, FORMAT, pixels, 0, width);
+        return image;
+    }
+
+    private static int[] logicalScreenSize(ImageReader reader) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        IIOMetadata metadata = reader.getStreamMetadata();
+        if (metadata != null) {
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree("javax_imageio_gif_stream_1.0");
+            IIOMetadataNode screen = child(root, "LogicalScreenDescriptor");
+            if (screen != null) {
+                width = Math.max(width, intAttribute(screen, "logicalScreenWidth", 0));
+                height = Math.max(height, intAttribute(screen, "logicalScreenHeight", 0));
+            }
+        }
+        return new int[] { width, height };
+    }
+
+    public void play() {
+        if (viewers++ == 0) {
+            playback = new Playback();
+        }
+    }
+
+    public void stop() {
+        if (viewers > 0 && --viewers == 0) {
+            playback.stop();
+            playback = null;
+        }
+    }
+
+    private static final class Frame {
+        final int[] pixels;
+        int delayMillis;
+
+        Frame(int size) {
+            this.pixels = new int[size];
+        }
+    }
+
+    /**
+     * Viena atskaņošanas reize: dekodēšanas uzdevums un kadru buferis. Kadri tiek
+     * nomainīti JavaFX kadru ciklā, kad pienācis iepriekšējā kadra aiztures beigu laiks.
+     */
+    private final class Playback extends AnimationTimer {
+        private final BlockingQueue<Frame> ready = new ArrayBlockingQueue<>(FRAME_BUFFERS);
+        private final BlockingQueue<Frame> free = new ArrayBlockingQueue<>(FRAME_BUFFERS);
+        private final Future<?> task;
+        private volatile boolean stopped;
+        private volatile boolean finished;
+        // Nākamā kadra laiks (System.nanoTime), tikai JavaFX pavedienā
+        private long deadline;
+
+        Playback() {
+            for (int i = 0; i < FRAME_BUFFERS; i++) {
+                free.add(new Frame(width * height));
+            }
+            task = DECODERS.submit(this::decode);
+            start();
+        }
+
+        private void decode() {
+            try (Compositor compositor = new Compositor(file, width, height, scale)) {
+                while (!stopped) {
+                    Frame frame = free.take();
+                    int delay = compositor.next(frame.pixels);
+                    if (delay == END) {
+                        break;
+                    }
+                    frame.delayMillis = delay;
+                    ready.put(frame);
+                }
+            } catch (InterruptedException e) {
+                // Apturēts
+            } catch (IOException | RuntimeException e) {
+                AsyncLog.log("GIF", "Kļūda dekodējot " + file.getFileName() + ": " + e.getMessage());
+            } finally {
+                finished = true;
+            }
+        }
+
+        @Override
+        public void handle(long now) {
+            if (stopped || now < deadline) {
+                return;
+            }
+            // Pirms finished pārbaudes, lai neizlaistu pēdējos buferī esošos kadrus
+            boolean done = finished;
+            Frame frame = ready.poll();
+            if (frame == null) {
+                // Dekodētājs atpaliek - nākamajā kadru ciklā; ja beidzis, paliek pēdējais kadrs
+                if (done) {
+                    super.stop();
+                }
+                return;
+            }
+            getPixelWriter().setPixels(0, 0, width, height, FORMAT, frame.pixels, 0, width);
+            deadline = now + frame.delayMillis * 1_000_000L;
+            free.offer(frame);
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+            super.stop();
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Saliek GIF kadrus ekrāna izmēra kanvā atbilstoši katra kadra novietojumam
+     * un likvidēšanas metodei. Pēc pēdējā kadra sāk no sākuma, kamēr atļauj
+     * GIF atkārtojumu skaits.
+     */
+    private static final class Compositor implements Closeable {
+        private final ImageInputStream stream;
+        private final ImageReader reader;
+        private final double scale;
+        private final ImageReadParam param;
+        private final BufferedImage canvas;
+        private final int[] canvasPixels;
+        private final Graphics2D graphics;
+        // Cik reizes atskaņot visus kadrus (0 - bezgalīgi)
+        private final int plays;
+
+        private int index;
+        private int played;
+        private String lastDisposal;
+        private Rectangle lastArea;
+        private int[] saved;
+        private boolean hasSaved;
+
+        Compositor(Path file, int width, int height, double scale) throws IOException {
+            this.stream = ImageIO.createImageInputStream(file.toFile());
+            if (stream == null) {
+                throw new IOException("Nevar atvērt " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                stream.close();
+                throw new IOException("Nav GIF: " + file);
+            }
+            this.reader = readers.next();
+            reader.setInput(stream, false, false);
+            this.scale = scale;
+
+            // Ļoti lieliem kadriem nolasa tikai katru n-to pikseli
+            this.param = reader.getDefaultReadParam();
+            int subsampling = Math.max(1, (int) Math.floor(1 / scale));
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+            this.canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            this.canvasPixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+            this.graphics = canvas.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            this.plays = playCount(reader);
+        }
+
+        /**
+         * Atskaņošanas reižu skaits no NETSCAPE2.0 paplašinājuma pirmā kadra metadatos.
+         */
+        private static int playCount(ImageReader reader) throws IOException {
+            IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(0).getAsTree("javax_imageio_gif_image_1.0");
+            IIOMetadataNode extensions = child(root, "ApplicationExtensions");
+            if (extensions == null) {
+                return 1;
+            }
+            for (int i = 0; i < extensions.getLength(); i++) {
+                IIOMetadataNode extension = (IIOMetadataNode) extensions.item(i);
+                if ("NETSCAPE".equals(extension.getAttribute("applicationID")) &&
+                    "2.0".equals(extension.getAttribute("authenticationCode")) &&
+                    extension.getUserObject() instanceof byte[]) {
+                    byte[] data = (byte[]) extension.getUserObject();
+                    if (data.length >= 3 && data[0] == 1) {
+                        int loops = (data[1] & 0xFF) | (data[2] & 0xFF) << 8;
+                        // Atkārtojumi pēc pirmās reizes, kā pārlūkos
+                        return loops == 0 ? 0 : loops + 1;
+                    }
+                }
+            }
+            return 1;
+        }
+
+        /**
+         * Saliek nākamo kadru un nokopē kanvu uz pixels (ARGB, premultiplied).
+         *
+         * @return kadra aizture milisekundēs vai {@link #END}, ja atkārtojumi beigušies
+         */
+        int next(int[] pixels) throws IOException {
+            dispose();
+
+            BufferedImage frame;
+            IIOMetadata metadata;
+            try {
+                frame = reader.read(index, param);
+                metadata = reader.getImageMetadata(index);
+            } catch (IndexOutOfBoundsException e) {
+                if (index == 0) {
+                    throw new IOException("GIF bez kadriem");
+                }
+                if (plays > 0 && ++played >= plays) {
+                    return END;
+                }
+                // No sākuma
+                index = 0;
+                clear(new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()));
+                lastDisposal = null;
+                return next(pixels);
+            }
+
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree("javax_imageio_gif_image_1.0");
+            IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+            IIOMetadataNode control = child(root, "GraphicControlExtension");
+            int left = descriptor != null ? intAttribute(descriptor, "imageLeftPosition", 0) : 0;
+            int top = descriptor != null ? intAttribute(descriptor, "imageTopPosition", 0) : 0;
+            int frameWidth = descriptor != null ? intAttribute(descriptor, "imageWidth", frame.getWidth()) : frame.getWidth();
+            int frameHeight = descriptor != null ? intAttribute(descriptor, "imageHeight", frame.getHeight()) : frame.getHeight();
+            String disposal = control != null ? control.getAttribute("disposalMethod") : "none";
+            int delay = control != null ? intAttribute(control, "delayTime", 0) * 10 : 0;
+
+            int x = (int) Math.floor(left * scale);
+            int y = (int) Math.floor(top * scale);
+            Rectangle area = new Rectangle(x, y,
+                    Math.max(1, (int) Math.ceil((left + frameWidth) * scale) - x),
+                    Math.max(1, (int) Math.ceil((top + frameHeight) * scale) - y));
+
+            if ("restoreToPrevious".equals(disposal)) {
+                if (saved == null) {
+                    saved = new int[canvasPixels.length];
+                }
+                System.arraycopy(canvasPixels, 0, saved, 0, saved.length);
+                hasSaved = true;
+            }
+            graphics.drawImage(frame, area.x, area.y, area.width, area.height, null);
+            lastDisposal = disposal;
+            lastArea = area;
+            index++;
+
+            System.arraycopy(canvasPixels, 0, pixels, 0, pixels.length);
+            return delay < MIN_DELAY_MILLIS ? DEFAULT_DELAY_MILLIS : delay;
+        }
+
+        /**
+         * Iepriekšējā kadra likvidēšana pirms nākamā zīmēšanas.
+         */
+        private void dispose() {
+            if ("restoreToBackgroundColor".equals(lastDisposal)) {
+                clear(lastArea);
+            } else if ("restoreToPrevious".equals(lastDisposal) && hasSaved) {
+                System.arraycopy(saved, 0, canvasPixels, 0, canvasPixels.length);
+                hasSaved = false;
+            }
+        }
+
+        private void clear(Rectangle area) {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(area.x, area.y, area.width, area.height);
+            graphics.setComposite(AlphaComposite.SrcOver);
+        }
+
+        @Override
+        public void close() throws IOException {
+            graphics.dispose();
+            reader.dispose();
+            stream.close();
+        }
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+        for (int i = 0; i < node.getLength(); i++) {
+            if (node.item(i) instanceof IIOMetadataNode && name.equals(node.item(i).getNodeName())) {
+                return (IIOMetadataNode) node.item(i);
+            }
+        }
+        return null;
+    }
+
+    private static int intAttribute(IIOMetadataNode node, String name, int defaultValue) {
+        try {
+            return Integer.parseInt(node.getAttribute(name));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package lv.talsi.dom;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+
+/**
+ * Nebloķējošs žurnāls: ieraksti tiek ielikti fiksēta izmēra riņķa buferī,
+ * un tos izraksta viens fona pavediens (konsolē un, ja konfigurēts, rotējošos
+ * failos). Izsaucējs nekad negaida uz I/O; ja buferis pilns, jaunie ieraksti
+ * tiek izmesti un to skaits tiek pierakstīts žurnālā.
+ *
+ * Laiks tiek formatēts fona pavedienā, ne biežāk kā reizi sekundē.
+ */
+final class AsyncLog {
+
+    private static final int CAPACITY = 4096;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final AsyncLog INSTANCE = new AsyncLog();
+
+    // Riņķa buferis (aizsargā lock)
+    private final long[] times = new long[CAPACITY];
+    private final String[] prefixes = new String[CAPACITY];
+    private final String[] messages = new String[CAPACITY];
+    private final Object lock = new Object();
+    private int head;
+    private int size;
+    private long dropped;
+    private boolean closing;
+    private Thread writer;
+
+    // Tikai rakstītāja pavedienā
+    private final long[] batchTimes = new long[CAPACITY];
+    private final String[] batchPrefixes = new String[CAPACITY];
+    private final String[] batchMessages = new String[CAPACITY];
+    private final StringBuilder line = new StringBuilder(256);
+    private final PrintStream console = System.out;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTime = "";
+    private volatile RotatingFile file;
+
+    private AsyncLog() {
+    }
+
+    /**
+     * Pieraksta ziņojumu formā {@code [HH:mm:ss] prefikss: ziņojums}.
+     *
+     * @param prefix komponentes nosaukums vai null
+     */
+    public static void log(String prefix, String message) {
+        INSTANCE.append(System.currentTimeMillis(), prefix, message);
+    }
+
+    /**
+     * Ieslēdz rakstīšanu failos (log.folder, log.file.max.mb, log.file.count).
+     */
+    public static void configure(Properties config) {
+        if (!Boolean.parseBoolean(config.getProperty("log.file.enabled", "true"))) {
+            return;
+        }
+        File folder = new File(config.getProperty("log.folder", "logs"));
+        long maxBytes = Long.parseLong(config.getProperty("log.file.max.mb", "10")) * 1024 * 1024;
+        int count = Integer.parseInt(config.getProperty("log.file.count", "5"));
+        try {
+            INSTANCE.file = new RotatingFile(folder, "infoekrani", maxBytes, Math.max(1, count));
+        } catch (IOException e) {
+            log("Žurnāls", "Nevar atvērt žurnāla failu mapē " + folder + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Izraksta visus gaidošos ierakstus un aptur rakstītāju (gaida ne ilgāk par timeoutMillis).
+     */
+    public static void shutdown(long timeoutMillis) {
+        INSTANCE.close(timeoutMillis);
+    }
+
+    private void append(long time, String prefix, String message) {
+        synchronized (lock) {
+            if (closing) {
+                return;
+            }
+            if (writer == null) {
+                startWriter();
+            }
+            if (size == CAPACITY) {
+                dropped++;
+                return;
+            }
+            int index = (head + size) % CAPACITY;
+            times[index] = time;
+            prefixes[index] = prefix;
+            messages[index] = message;
+            if (size++ == 0) {
+                lock.notify();
+            }
+        }
+    }
+
+    private void startWriter() {
+        writer = new Thread(this::run, "async-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close(2000), "async-log-flush"));
+    }
+
+    private void run() {
+        while (true) {
+            int count;
+            long lost;
+            boolean last;
+            synchronized (lock) {
+                while (size == 0 && !closing) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        closing = true;
+                    }
+                }
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    int index = (head + i) % CAPACITY;
+                    batchTimes[i] = times[index];
+                    batchPrefixes[i] = prefixes[index];
+                    batchMessages[i] = messages[index];
+                    prefixes[index] = null;
+                    messages[index] = null;
+                }
+                head = (head + count) % CAPACITY;
+                size = 0;
+                lost = dropped;
+                dropped = 0;
+                last = closing;
+            }
+
+            if (lost > 0) {
+                write(System.currentTimeMillis(), "Žurnāls", "Buferis bija pilns, izmesti " + lost + " ieraksti");
+            }
+            for (int i = 0; i < count; i++) {
+                write(batchTimes[i], batchPrefixes[i], batchMessages[i]);
+                batchPrefixes[i] = null;
+                batchMessages[i] = null;
+            }
+            console.flush();
+            RotatingFile current = file;
+            if (current != null) {
+                current.flush();
+            }
+
+            if (last) {
+                if (current != null) {
+                    current.close();
+                }
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void write(long time, String prefix, String message) {
+        line.setLength(0);
+        line.append('[').append(formatTime(time)).append("] ");
+        if (prefix != null && !prefix.isEmpty()) {
+            line.append(prefix).append(": ");
+        }
+        line.append(message);
+
+        console.append(line).append('\n');
+        RotatingFile current = file;
+        if (current != null) {
+            current.write(line);
+        }
+    }
+
+    private String formatTime(long time) {
+        long second = time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone).format(TIME_FORMAT);
+        }
+        return cachedTime;
+    }
+
+    private void close(long timeoutMillis) {
+        synchronized (lock) {
+            if (writer == null || closing) {
+                return;
+            }
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Žurnāla fails, kas pēc maxBytes tiek pārdēvēts (name.1.log, name.2.log, ...)
+     * un sākts no jauna; vecākie virs count tiek dzēsti.
+     */
+    private static class RotatingFile {
+        private final File folder;
+        private final String name;
+        private final long maxBytes;
+        private final int count;
+        private Writer out;
+        private long bytes;
+
+        RotatingFile(File folder, String name, long maxBytes, int count) throws IOException {
+            this.folder = folder;
+            this.name = name;
+            this.maxBytes = maxBytes;
+            this.count = count;
+            folder.mkdirs();
+            open();
+        }
+
+        private File file(int index) {
+            return new File(folder, index == 0 ? name + ".log" : name + "." + index + ".log");
+        }
+
+        private void open() throws IOException {
+            File current = file(0);
+            bytes = current.length();
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(current, true), StandardCharsets.UTF_8), 64 * 1024);
+        }
+
+        void write(CharSequence text) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.append(text).append('\n');
+                // Latviešu burti UTF-8 aizņem 2 baitus; precīzs izmērs rotācijai nav vajadzīgs
+                bytes += text.length() + 1;
+                if (bytes >= maxBytes) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                out = null;
+            }
+        }
+
+        private void rotate() throws IOException {
+            out.close();
+            file(count - 1).delete();
+            for (int i = count - 2; i >= 0; i--) {
+                File from = file(i);
+                if (from.exists()) {
+                    from.renameTo(file(i + 1));
+                }
+            }
+            open();
+        }
+
+        void flush() {
+            try {
+                if (out != null) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                out = null;
+            }
+        }
+
+        void close() {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException ignored) {
+                // Nav kur ziņot
+            }
+        }
+    }
+}
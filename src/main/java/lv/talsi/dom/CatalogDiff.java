@@ -0,0 +1,108 @@
+package lv.talsi.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Atšķirības starp esošo un jaunu attēlu sarakstu.
+ *
+ * Attēli tiek salīdzināti pēc atrašanās vietas ({@link ImageInfo#getLocation()});
+ * ja tā pati vieta ar citu izmaiņu laiku vai izmēru, attēls skaitās mainīts.
+ */
+class CatalogDiff {
+
+    static final Comparator<ImageInfo> ORDER = Comparator.comparing(ImageInfo::getFileName);
+
+    private final List<ImageInfo> added = new ArrayList<>();
+    private final List<ImageInfo> removed = new ArrayList<>();
+    private final List<ImageInfo> replaced = new ArrayList<>();
+    private final Map<String, ImageInfo> modified = new HashMap<>();
+
+    private CatalogDiff() {
+    }
+
+    public static CatalogDiff compare(List<ImageInfo> current, List<ImageInfo> fresh) {
+        CatalogDiff diff = new CatalogDiff();
+
+        Map<String, ImageInfo> freshByLocation = new HashMap<>(fresh.size() * 2);
+        for (ImageInfo info : fresh) {
+            freshByLocation.put(info.getLocation(), info);
+        }
+
+        Map<String, ImageInfo> currentByLocation = new HashMap<>(current.size() * 2);
+        for (ImageInfo info : current) {
+            currentByLocation.put(info.getLocation(), info);
+            ImageInfo updated = freshByLocation.get(info.getLocation());
+            if (updated == null) {
+                diff.removed.add(info);
+            } else if (!updated.equals(info)) {
+                diff.replaced.add(info);
+                diff.modified.put(info.getLocation(), updated);
+            }
+        }
+
+        for (ImageInfo info : fresh) {
+            if (!currentByLocation.containsKey(info.getLocation())) {
+                diff.added.add(info);
+            }
+        }
+        return diff;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+    }
+
+    /**
+     * Jauns, kārtots saraksts ar piemērotām izmaiņām. Nemainītie ieraksti
+     * saglabā savus objektus un secību.
+     */
+    public List<ImageInfo> apply(List<ImageInfo> current) {
+        Set<ImageInfo> gone = new HashSet<>(removed);
+        List<ImageInfo> result = new ArrayList<>(current.size() + added.size());
+        for (ImageInfo info : current) {
+            if (gone.contains(info)) {
+                continue;
+            }
+            result.add(modified.getOrDefault(info.getLocation(), info));
+        }
+
+        for (ImageInfo info : added) {
+            int index = Collections.binarySearch(result, info, ORDER);
+            result.add(index < 0 ? -index - 1 : index, info);
+        }
+        return result;
+    }
+
+    /**
+     * Pozīcija jaunajā sarakstā, no kuras turpināt rādīšanu, lai nākamais
+     * būtu tas pats (vai nākamais pēc nosaukuma, ja tas izdzēsts) attēls.
+     */
+    public static int positionOf(List<ImageInfo> list, ImageInfo next) {
+        if (next == null || list.isEmpty()) {
+            return 0;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getLocation().equals(next.getLocation())) {
+                return i;
+            }
+        }
+        int index = Collections.binarySearch(list, next, ORDER);
+        int position = index < 0 ? -index - 1 : index;
+        return position >= list.size() ? 0 : position;
+    }
+
+    public List<ImageInfo> getAdded() { return added; }
+    public List<ImageInfo> getRemoved() { return removed; }
+
+    /**
+     * Mainīto attēlu iepriekšējās versijas.
+     */
+    public List<ImageInfo> getReplaced() { return replaced; }
+}
@@ -0,0 +1,135 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Attēlu satura identitāte (SHA-256), saglabāta starp palaišanām.
+ *
+ * Ieraksts derīgs, kamēr faila lastModified un izmērs nav mainījušies, tāpēc
+ * katrs fails tiek nolasīts ne vairāk kā vienreiz pēc katras izmaiņas.
+ * Formāts ir {@link Properties}: {@code AVOTS:ceļš=lastModified;fileSize;sha256}.
+ * Izmanto tikai kataloga fona pavediens.
+ */
+class ContentHashes {
+
+    private static final String FILE_NAME = "content-hashes.properties";
+
+    private final Path file;
+    private final Map<String, String> entries = new HashMap<>();
+    private boolean loaded;
+    private boolean dirty;
+
+    public ContentHashes(Path file) {
+        this.file = file;
+    }
+
+    static Path file(Properties config) {
+        return Paths.get(config.getProperty("state.folder", "state")).resolve(FILE_NAME);
+    }
+
+    private static String key(ImageInfo info) {
+        return info.getLocation();
+    }
+
+    private static String version(ImageInfo info) {
+        return info.getLastModified() + ";" + info.getFileSize() + ";";
+    }
+
+    /**
+     * Attēla satura hash; ja zināms (piem., no SMB manifesta), tiek izmantots
+     * {@code knownHash}, citādi nolasīts no saglabātajiem vai aprēķināts no lokālā faila.
+     *
+     * @return hash vai null, ja failu nevar nolasīt
+     */
+    public String get(ImageInfo info, String knownHash, Path localFile) {
+        load();
+        String key = key(info);
+        String version = version(info);
+        String cached = entries.get(key);
+        if (cached != null && cached.startsWith(version)) {
+            return cached.substring(version.length());
+        }
+
+        String hash = knownHash;
+        if (hash == null) {
+            if (localFile == null) {
+                return null;
+            }
+            try {
+                hash = ContentManifest.sha256(localFile);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        hash = hash.toLowerCase();
+        entries.put(key, version + hash);
+        dirty = true;
+        return hash;
+    }
+
+    /**
+     * Aizmirst failus, kuru vairs nav katalogā, lai saglabātais saraksts neaugtu.
+     */
+    public void retain(Collection<ImageInfo> images) {
+        load();
+        Set<String> keep = new HashSet<>();
+        for (ImageInfo info : images) {
+            keep.add(key(info));
+        }
+        if (entries.keySet().retainAll(keep)) {
+            dirty = true;
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        } catch (IOException | IllegalArgumentException e) {
+            // Tiks aprēķināts no jauna
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            entries.put(key, properties.getProperty(key));
+        }
+    }
+
+    /**
+     * Saglabā, ja kopš pēdējās reizes kas mainījies.
+     */
+    public void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.putAll(entries);
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temp)) {
+            properties.store(output, "Info ekrāna attēlu satura hash");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+}
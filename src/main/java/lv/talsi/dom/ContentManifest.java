@@ -0,0 +1,128 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Satura manifests: neliels fails attēlu mapē, kas uzskaita attēlus ar
+ * izmēru, izmaiņu laiku un SHA-256. Ekrāni nolasa tikai šo failu, nevis
+ * pārskata visu SMB mapi.
+ *
+ * Formāts ir {@link Properties}: {@code manifest.generation} un
+ * {@code manifest.created}, tad katram attēlam
+ * {@code file.<nosaukums>=lastModified;fileSize;sha256}.
+ */
+class ContentManifest {
+
+    static final String GENERATION_KEY = "manifest.generation";
+    static final String CREATED_KEY = "manifest.created";
+    static final String FILE_PREFIX = "file.";
+
+    private final long generation;
+    private final long created;
+    private final List<Entry> entries;
+
+    public ContentManifest(long generation, long created, List<Entry> entries) {
+        this.generation = generation;
+        this.created = created;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public long getGeneration() { return generation; }
+    public long getCreated() { return created; }
+    public List<Entry> getEntries() { return entries; }
+
+    /**
+     * @throws IOException ja fails nav manifests vai ir bojāts
+     */
+    public static ContentManifest read(InputStream input) throws IOException {
+        Properties properties = new Properties();
+        properties.load(input);
+
+        try {
+            long generation = Long.parseLong(properties.getProperty(GENERATION_KEY, "0"));
+            long created = Long.parseLong(properties.getProperty(CREATED_KEY, "0"));
+
+            List<Entry> entries = new ArrayList<>();
+            for (String key : properties.stringPropertyNames()) {
+                if (!key.startsWith(FILE_PREFIX)) {
+                    continue;
+                }
+                String[] parts = properties.getProperty(key).split(";", 3);
+                if (parts.length < 3) {
+                    throw new IOException("Bojāts ieraksts: " + key);
+                }
+                entries.add(new Entry(key.substring(FILE_PREFIX.length()),
+                        Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+            }
+            return new ContentManifest(generation, created, entries);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bojāts manifests: " + e.getMessage());
+        }
+    }
+
+    public void write(OutputStream output) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(GENERATION_KEY, Long.toString(generation));
+        properties.setProperty(CREATED_KEY, Long.toString(created));
+        for (Entry entry : entries) {
+            properties.setProperty(FILE_PREFIX + entry.getFileName(),
+                    entry.getLastModified() + ";" + entry.getFileSize() + ";" + entry.getHash());
+        }
+        properties.store(output, "Info ekrānu satura manifests");
+    }
+
+    /**
+     * Faila SHA-256 kā heksadecimāla virkne.
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            while (input.read(buffer) != -1) {
+                // Tikai jāizlasa
+            }
+        }
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    public static class Entry {
+        private final String fileName;
+        private final long lastModified;
+        private final long fileSize;
+        private final String hash;
+
+        public Entry(String fileName, long lastModified, long fileSize, String hash) {
+            this.fileName = fileName;
+            this.lastModified = lastModified;
+            this.fileSize = fileSize;
+            this.hash = hash;
+        }
+
+        public String getFileName() { return fileName; }
+        public long getLastModified() { return lastModified; }
+        public long getFileSize() { return fileSize; }
+        public String getHash() { return hash; }
+    }
+}
@@ -0,0 +1,198 @@
+package lv.talsi.dom;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Izplata šī ekrāna SMB spoguli citiem ekrāniem tajā pašā vietā, lai
+ * centrālais SMB serveris nebūtu jānoslogo katram ekrānam atsevišķi.
+ *
+ * {@code GET /catalog} atgriež spoguļa saturu {@link ContentManifest} formātā
+ * (paaudze ir spoguļa versija, ETag ļauj atbildēt 304), {@code GET /images/<ceļš>}
+ * atgriež attēla failu. Tiek izsniegti tikai spogulī esošie faili.
+ *
+ * Katalogā ir katra faila SHA-256, lai saņēmējs varētu pārbaudīt saturu;
+ * tas tiek aprēķināts tikai jauniem vai mainītiem failiem.
+ */
+class ContentRelayServer {
+
+    static final String CATALOG_PATH = "/catalog";
+    static final String IMAGES_PATH = "/images/";
+
+    private final SMBMirror mirror;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // Aprēķinātie SHA-256 pēc ceļa un pēdējais katalogs (sinhronizēti)
+    private final Map<String, ContentManifest.Entry> hashed = new HashMap<>();
+    private long catalogGeneration = -1;
+    private byte[] catalogBody;
+
+    public ContentRelayServer(SMBMirror mirror) {
+        this.mirror = mirror;
+    }
+
+    public boolean start(String host, int port, int threads) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            server.createContext(CATALOG_PATH, this::handleCatalog);
+            server.createContext(IMAGES_PATH, this::handleImage);
+
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+                Thread t = new Thread(r, "content-relay-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            server.setExecutor(executor);
+            server.start();
+            // Hash aprēķins fonā, lai pirmais pieprasījums nebūtu jāgaida
+            executor.execute(() -> {
+                try {
+                    catalog(mirror.snapshot());
+                } catch (IOException e) {
+                    log("Neizdevās sagatavot katalogu: " + e.getMessage());
+                }
+            });
+            log("Saturs pieejams citiem ekrāniem: http://" + host + ":" + port);
+            return true;
+        } catch (IOException e) {
+            log("Neizdevās palaist satura releju: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void handleCatalog(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            // Versija un saturs no viena momentuzņēmuma; lejupielāde spogulī to neaizkavē
+            SMBMirror.Snapshot snapshot = mirror.snapshot();
+            long generation = snapshot.getGeneration();
+            String etag = "\"" + generation + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            byte[] body = catalog(snapshot);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=iso-8859-1");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Katalogs momentuzņēmumam; tiek veidots vienreiz katrai spoguļa versijai.
+     */
+    private synchronized byte[] catalog(SMBMirror.Snapshot snapshot) throws IOException {
+        if (catalogBody != null && catalogGeneration == snapshot.getGeneration()) {
+            return catalogBody;
+        }
+
+        Map<String, ContentManifest.Entry> current = new HashMap<>();
+        List<ContentManifest.Entry> entries = new ArrayList<>();
+        boolean complete = true;
+        for (SMBImageClient.SMBImageInfo info : snapshot.getEntries()) {
+            // Ceļš, nevis tikai nosaukums, lai spoguļa atslēgas sakristu ar SMB
+            ContentManifest.Entry entry = hashed.get(info.getRemotePath());
+            if (entry == null || entry.getLastModified() != info.getLastModified() ||
+                entry.getFileSize() != info.getFileSize()) {
+                entry = hash(info);
+                if (entry.getHash().isEmpty()) {
+                    // Bez hash saņēmējs pārbauda tikai izmēru; nākamreiz mēģināt vēlreiz
+                    complete = false;
+                    entries.add(entry);
+                    continue;
+                }
+            }
+            current.put(info.getRemotePath(), entry);
+            entries.add(entry);
+        }
+        hashed.clear();
+        hashed.putAll(current);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        new ContentManifest(snapshot.getGeneration(), System.currentTimeMillis() / 1000, entries).write(body);
+        if (!complete) {
+            return body.toByteArray();
+        }
+        catalogBody = body.toByteArray();
+        catalogGeneration = snapshot.getGeneration();
+        return catalogBody;
+    }
+
+    private ContentManifest.Entry hash(SMBImageClient.SMBImageInfo info) {
+        String hash = "";
+        Path file = mirror.getLocalFile(info.getRemotePath());
+        if (file != null) {
+            try {
+                hash = ContentManifest.sha256(file);
+            } catch (IOException e) {
+                log("Nevar nolasīt spoguļa failu: " + info.getRemotePath() + " - " + e.getMessage());
+            }
+        }
+        return new ContentManifest.Entry(info.getRemotePath(), info.getLastModified(), info.getFileSize(), hash);
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String remotePath = exchange.getRequestURI().getPath().substring(IMAGES_PATH.length());
+            Path file = mirror.getLocalFile(remotePath);
+            if (file == null || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream output = exchange.getResponseBody()) {
+                Files.copy(file, output);
+            }
+        } catch (IOException e) {
+            log("Kļūda izsniedzot attēlu: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void log(String message) {
+        AsyncLog.log("Relejs", message);
+    }
+}
@@ -0,0 +1,188 @@
+package lv.talsi.dom;
+
+import javafx.application.Platform;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Attēlu ceļa rādītāji: ielādes/dekodēšanas latentums pa avotiem, SMB
+ * saraksta un lejupielādes latentums un apjoms, kataloga izmērs, izlaistie
+ * attēli, dekodēto attēlu atmiņa, SMB atkārtotie savienojumi un JavaFX
+ * pavediena aizture.
+ *
+ * Viens eksemplārs uz procesu ({@link #get()}); tiek reģistrēts JMX kā
+ * {@code lv.talsi.dom:type=DisplayMetrics}.
+ */
+public class DisplayMetrics implements DisplayMetricsMBean {
+
+    private static final DisplayMetrics INSTANCE = new DisplayMetrics();
+
+    // JavaFX aizture virs šī tiek uzskatīta par "iestrēgšanu"
+    private static final long FX_STALL_THRESHOLD_MILLIS = 50;
+
+    private final Map<ImageInfo.Source, LatencyHistogram> loadLatency = new EnumMap<>(ImageInfo.Source.class);
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final LatencyHistogram smbListLatency = new LatencyHistogram();
+    private final LatencyHistogram smbDownloadLatency = new LatencyHistogram();
+    private final LatencyHistogram fxDelay = new LatencyHistogram();
+
+    private final LongAdder smbBytesDownloaded = new LongAdder();
+    private final LongAdder skippedImages = new LongAdder();
+    private final LongAdder fxStallCount = new LongAdder();
+    private final LongAdder fxStallMillisTotal = new LongAdder();
+    private final AtomicLong fxMaxStallMillis = new AtomicLong();
+
+    private volatile LongSupplier catalogSize = () -> 0;
+    private volatile LongSupplier decodedImageBytes = () -> 0;
+    private volatile LongSupplier smbReconnects = () -> 0;
+
+    private ScheduledExecutorService fxProbe;
+
+    private DisplayMetrics() {
+        for (ImageInfo.Source source : ImageInfo.Source.values()) {
+            loadLatency.put(source, new LatencyHistogram());
+        }
+    }
+
+    public static DisplayMetrics get() {
+        return INSTANCE;
+    }
+
+    public void register() {
+        try {
+            ObjectName name = new ObjectName("lv.talsi.dom:type=DisplayMetrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            log("Neizdevās reģistrēt JMX rādītājus: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reizi sekundē ieliek JavaFX rindā tukšu uzdevumu un mēra, cik ilgi tas gaida.
+     */
+    public synchronized void startFxStallProbe() {
+        if (fxProbe != null) {
+            return;
+        }
+        fxProbe = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fx-stall-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        fxProbe.scheduleWithFixedDelay(() -> {
+            long posted = System.nanoTime();
+            Platform.runLater(() -> recordFxDelay(System.nanoTime() - posted));
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Aptur mērīšanu, piem., ārpus darba laika, lai JavaFX pavediens netiktu modināts.
+     */
+    public synchronized void stopFxStallProbe() {
+        if (fxProbe != null) {
+            fxProbe.shutdownNow();
+            fxProbe = null;
+        }
+    }
+
+    public void stop() {
+        stopFxStallProbe();
+    }
+
+    public void recordLoad(ImageInfo.Source source, long nanos) { loadLatency.get(source).record(nanos); }
+    public void recordDecode(long nanos) { decodeLatency.record(nanos); }
+    public void recordSmbList(long nanos) { smbListLatency.record(nanos); }
+
+    public void recordSmbDownload(long nanos, long bytes) {
+        smbDownloadLatency.record(nanos);
+        smbBytesDownloaded.add(bytes);
+    }
+
+    public void recordSkippedImage() { skippedImages.increment(); }
+
+    private void recordFxDelay(long nanos) {
+        fxDelay.record(nanos);
+        long millis = nanos / 1_000_000;
+        if (millis >= FX_STALL_THRESHOLD_MILLIS) {
+            fxStallCount.increment();
+            fxStallMillisTotal.add(millis);
+            fxMaxStallMillis.accumulateAndGet(millis, Math::max);
+        }
+    }
+
+    public void setCatalogSize(LongSupplier supplier) { this.catalogSize = supplier; }
+    public void setDecodedImageBytes(LongSupplier supplier) { this.decodedImageBytes = supplier; }
+    public void setSmbReconnects(LongSupplier supplier) { this.smbReconnects = supplier; }
+
+    @Override public long getCatalogSize() { return catalogSize.getAsLong(); }
+    @Override public long getSkippedImages() { return skippedImages.sum(); }
+    @Override public long getDecodedImageBytes() { return decodedImageBytes.getAsLong(); }
+
+    @Override public long getLocalLoadCount() { return loadLatency.get(ImageInfo.Source.LOCAL).getCount(); }
+    @Override public double getLocalLoadMeanMillis() { return loadLatency.get(ImageInfo.Source.LOCAL).getMeanMillis(); }
+    @Override public long getSmbLoadCount() { return loadLatency.get(ImageInfo.Source.SMB).getCount(); }
+    @Override public double getSmbLoadMeanMillis() { return loadLatency.get(ImageInfo.Source.SMB).getMeanMillis(); }
+    @Override public double getDecodeMeanMillis() { return decodeLatency.getMeanMillis(); }
+
+    @Override public long getSmbListCount() { return smbListLatency.getCount(); }
+    @Override public double getSmbListMeanMillis() { return smbListLatency.getMeanMillis(); }
+    @Override public long getSmbDownloadCount() { return smbDownloadLatency.getCount(); }
+    @Override public double getSmbDownloadMeanMillis() { return smbDownloadLatency.getMeanMillis(); }
+    @Override public long getSmbBytesDownloaded() { return smbBytesDownloaded.sum(); }
+    @Override public long getSmbReconnects() { return smbReconnects.getAsLong(); }
+
+    @Override public long getFxStallCount() { return fxStallCount.sum(); }
+    @Override public long getFxStallMillisTotal() { return fxStallMillisTotal.sum(); }
+    @Override public long getFxMaxStallMillis() { return fxMaxStallMillis.get(); }
+
+    @Override
+    public String getPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# TYPE infoekrani_image_load_seconds histogram\n");
+        for (Map.Entry<ImageInfo.Source, LatencyHistogram> entry : loadLatency.entrySet()) {
+            entry.getValue().writePrometheus(out, "infoekrani_image_load_seconds", "source=\"" + entry.getKey() + "\"");
+        }
+        out.append("# TYPE infoekrani_image_decode_seconds histogram\n");
+        decodeLatency.writePrometheus(out, "infoekrani_image_decode_seconds", "");
+        out.append("# TYPE infoekrani_smb_list_seconds histogram\n");
+        smbListLatency.writePrometheus(out, "infoekrani_smb_list_seconds", "");
+        out.append("# TYPE infoekrani_smb_download_seconds histogram\n");
+        smbDownloadLatency.writePrometheus(out, "infoekrani_smb_download_seconds", "");
+        out.append("# TYPE infoekrani_fx_queue_delay_seconds histogram\n");
+        fxDelay.writePrometheus(out, "infoekrani_fx_queue_delay_seconds", "");
+
+        counter(out, "infoekrani_smb_downloaded_bytes_total", getSmbBytesDownloaded());
+        counter(out, "infoekrani_skipped_images_total", getSkippedImages());
+        counter(out, "infoekrani_smb_reconnects_total", getSmbReconnects());
+        counter(out, "infoekrani_fx_stalls_total", getFxStallCount());
+        counter(out, "infoekrani_fx_stall_seconds_total", getFxStallMillisTotal() / 1000.0);
+        gauge(out, "infoekrani_fx_max_stall_seconds", getFxMaxStallMillis() / 1000.0);
+        gauge(out, "infoekrani_catalog_images", getCatalogSize());
+        gauge(out, "infoekrani_decoded_image_bytes", getDecodedImageBytes());
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, Number value) {
+        out.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, Number value) {
+        out.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private void log(String message) {
+        AsyncLog.log("Rādītāji", message);
+    }
+}
@@ -0,0 +1,33 @@
+package lv.talsi.dom;
+
+/**
+ * Info ekrāna darbības rādītāji, pieejami caur JMX.
+ */
+public interface DisplayMetricsMBean {
+
+    long getCatalogSize();
+    long getSkippedImages();
+    long getDecodedImageBytes();
+
+    long getLocalLoadCount();
+    double getLocalLoadMeanMillis();
+    long getSmbLoadCount();
+    double getSmbLoadMeanMillis();
+    double getDecodeMeanMillis();
+
+    long getSmbListCount();
+    double getSmbListMeanMillis();
+    long getSmbDownloadCount();
+    double getSmbDownloadMeanMillis();
+    long getSmbBytesDownloaded();
+    long getSmbReconnects();
+
+    long getFxStallCount();
+    long getFxStallMillisTotal();
+    long getFxMaxStallMillis();
+
+    /**
+     * Visi rādītāji Prometheus teksta formātā.
+     */
+    String getPrometheusText();
+}
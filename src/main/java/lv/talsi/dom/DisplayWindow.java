@@ -0,0 +1,438 @@
+package lv.talsi.dom;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.stage.Screen;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Viena ekrāna logs ar savu slaidrādi.
+ *
+ * Katalogs, SMB savienojums, kešatmiņas un ielādes pavedieni ir kopīgi visiem
+ * ekrāniem; logam pieder tikai UI, pozīcija katalogā, priekšielādes logs un
+ * dekodētājs sava ekrāna izmērā. Ekrāna iestatījumi ({@code display.<n>.*})
+ * pārraksta kopējos:
+ * <ul>
+ *   <li>{@code display.<n>.slideshow.interval} - slaidu maiņas intervāls sekundēs</li>
+ *   <li>{@code display.<n>.include} - faila nosaukuma maska (piem. {@code zale_*}); tukša = visi attēli</li>
+ * </ul>
+ * Visas metodes jāizsauc no JavaFX pavediena.
+ */
+class DisplayWindow {
+
+    private final int number;
+    private final String logName;
+    private final Properties config;
+    private final ImageCatalog catalog;
+    private final int slideshowInterval;
+    private final PathMatcher include;
+    private final Path stateFile;
+
+    private final ImageDecoder decoder;
+    private final ImageLoader loader;
+    private final ImagePrefetcher prefetcher;
+    private final PlaylistCursor cursor = new PlaylistCursor();
+
+    private ImageView imageView;
+    private Label timeLabel;
+    private Label statusLabel;
+    private HBox statusBox;
+    // Statusa rinda tiek atjaunināta ne biežāk kā reizi JavaFX kadrā
+    private final StatusUpdater statusUpdater = new StatusUpdater(text -> statusLabel.setText(text));
+    private Timeline slideshow;
+    private ImageInfo waitingFor;
+    // Ārpus darba laika: melns ekrāns, taimeri apturēti
+    private boolean sleeping;
+
+    // Kopējā kataloga izlase šim ekrānam (pārrēķina, kad katalogs mainās)
+    private Playlist source;
+    private Playlist selected = Playlist.EMPTY;
+
+    // Saglabātais stāvoklis ātrai startēšanai
+    private ImageInfo lastShown;
+    private Playlist savedPlaylist;
+    private ImageInfo savedShown;
+
+    /**
+     * @param number  ekrāna numurs (1 = pirmais {@link Screen#getScreens()} sarakstā)
+     * @param primary galvenais logs izmanto kopējo stāvokļa failu
+     * @param single  vienīgais logs - žurnālā bez ekrāna nosaukuma
+     */
+    public DisplayWindow(int number, boolean primary, boolean single, Properties config, ImageCatalog catalog,
+                         ImageCache imageCache, RenderCache renderCache, ExecutorService loadExecutor) {
+        this.number = number;
+        this.logName = single ? null : "Ekrāns " + number;
+        this.config = config;
+        this.catalog = catalog;
+        this.slideshowInterval = Integer.parseInt(setting("slideshow.interval", "10"));
+        this.include = matcher(setting("include", "").trim());
+        this.stateFile = primary ? PlaylistState.file(config) : PlaylistState.file(config, number);
+
+        // Attēli tiek dekodēti šī ekrāna izmērā
+        long maxSourcePixels = (long) (Double.parseDouble(config.getProperty("image.max.source.megapixels", "100")) * 1_000_000);
+        long maxDecodedPixels = (long) (Double.parseDouble(config.getProperty("image.max.decoded.megapixels", "8.3")) * 1_000_000);
+        this.decoder = new ImageDecoder(maxSourcePixels, maxDecodedPixels);
+        this.loader = new ImageLoader(catalog, decoder, imageCache, renderCache, this::updateStatus);
+        this.prefetcher = new ImagePrefetcher(loader::load,
+                Integer.parseInt(config.getProperty("prefetch.count", "3")), loadExecutor);
+    }
+
+    /**
+     * Ekrāna iestatījums ar atkāpšanos uz kopējo.
+     */
+    private String setting(String key, String defaultValue) {
+        return config.getProperty("display." + number + "." + key, config.getProperty(key, defaultValue));
+    }
+
+    private PathMatcher matcher(String pattern) {
+        if (pattern.isEmpty()) {
+            return null;
+        }
+        try {
+            return FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        } catch (IllegalArgumentException e) {
+            updateStatus("Nederīga attēlu maska '" + pattern + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public void show(Stage stage, Screen screen) {
+        // Izveidot UI elementus
+        imageView = new ImageView();
+        imageView.setPreserveRatio(true);
+        imageView.setSmooth(true);
+
+        // Laika rādījums
+        timeLabel = new Label();
+        timeLabel.setTextFill(Color.WHITE);
+        timeLabel.setFont(Font.font("Arial", FontWeight.BOLD, 24));
+
+        // Statusa rādījums
+        statusLabel = new Label("Sistēma startē...");
+        statusLabel.setTextFill(Color.YELLOW);
+        statusLabel.setFont(Font.font("Arial", FontWeight.NORMAL, 14));
+
+        // Statusa panelis
+        statusBox = new HBox(20);
+        statusBox.setAlignment(Pos.CENTER);
+        statusBox.getChildren().addAll(timeLabel, statusLabel);
+        statusBox.setStyle("-fx-background-color: rgba(0, 0, 0, 0.7); -fx-padding: 10px;");
+
+        // Galvenais layout
+        StackPane root = new StackPane();
+        root.setStyle("-fx-background-color: black;");
+        root.getChildren().addAll(imageView, statusBox);
+        StackPane.setAlignment(statusBox, Pos.TOP_CENTER);
+
+        // Scene un Stage konfigurācija; pilnekrāna režīms tiek ieslēgts tajā ekrānā, kur atrodas logs
+        Scene scene = new Scene(root, 800, 600);
+        Rectangle2D bounds = screen.getVisualBounds();
+        stage.setX(bounds.getMinX());
+        stage.setY(bounds.getMinY());
+        stage.setTitle("Talsu novada Info Ekrāns");
+        stage.setScene(scene);
+        stage.setFullScreen(true);
+        stage.setFullScreenExitHint("");
+        stage.show();
+
+        // Pielāgot attēla izmēru logam
+        imageView.fitWidthProperty().bind(scene.widthProperty());
+        imageView.fitHeightProperty().bind(scene.heightProperty().subtract(80));
+
+        decoder.setTargetSize(imageView.getFitWidth(), imageView.getFitHeight());
+        imageView.fitWidthProperty().addListener((obs, oldValue, newValue) -> updateTargetSize());
+        imageView.fitHeightProperty().addListener((obs, oldValue, newValue) -> updateTargetSize());
+    }
+
+    private void updateTargetSize() {
+        boolean larger = imageView.getFitWidth() > decoder.getTargetWidth() ||
+                         imageView.getFitHeight() > decoder.getTargetHeight();
+        decoder.setTargetSize(imageView.getFitWidth(), imageView.getFitHeight());
+        if (larger) {
+            // Jau sagatavotie attēli ir par mazu jaunajam ekrāna izmēram; kešatmiņā tie paliek citiem ekrāniem
+            prefetcher.clear();
+        }
+    }
+
+    /**
+     * Šim ekrānam paredzētie attēli no publicētā kataloga.
+     */
+    private Playlist select(Playlist current) {
+        if (current != source) {
+            source = current;
+            if (include == null) {
+                selected = current;
+            } else {
+                List<ImageInfo> images = new ArrayList<>();
+                for (ImageInfo info : current.getImages()) {
+                    if (included(info)) {
+                        images.add(info);
+                    }
+                }
+                selected = new Playlist(images);
+            }
+        }
+        return selected;
+    }
+
+    private boolean included(ImageInfo info) {
+        try {
+            return include.matches(Paths.get(info.getFileName()));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    public void onPlaylistChanged() {
+        boolean wasEmpty = cursor.isEmpty();
+        cursor.sync(select(catalog.getPlaylist()));
+        if (sleeping) {
+            return;
+        }
+
+        if (wasEmpty && !cursor.isEmpty()) {
+            restartSlideshow();
+        } else if (!cursor.isEmpty()) {
+            prefetcher.prefetch(cursor.getPlaylist().getImages(), cursor.getIndex());
+            if (slideshow.getStatus() != Animation.Status.RUNNING) {
+                // Slaidrāde bija apturēta ar vienu attēlu - katalogs mainījies
+                startSlideshow();
+            }
+        }
+    }
+
+    /**
+     * Izslēdz ekrānu (melns attēls bez animācijām) līdz {@link #wake()}.
+     */
+    public void sleep() {
+        sleeping = true;
+        if (slideshow != null) {
+            slideshow.stop();
+        }
+        waitingFor = null;
+        prefetcher.clear();
+        setImage(null);
+        statusBox.setVisible(false);
+    }
+
+    public void wake() {
+        sleeping = false;
+        statusBox.setVisible(true);
+        startSlideshow();
+    }
+
+    public void startSlideshow() {
+        if (slideshow != null) {
+            slideshow.stop();
+        }
+
+        slideshow = new Timeline(new KeyFrame(Duration.seconds(slideshowInterval), e -> showNextImage()));
+        slideshow.setCycleCount(Timeline.INDEFINITE);
+        slideshow.play();
+
+        // Rādīt pirmo attēlu uzreiz
+        showNextImage();
+    }
+
+    private void restartSlideshow() {
+        cursor.reset();
+        startSlideshow();
+    }
+
+    private void showNextImage() {
+        cursor.sync(select(catalog.getPlaylist()));
+
+        ImageInfo imageInfo = cursor.current();
+        if (imageInfo == null) {
+            prefetcher.clear();
+            showPlaceholderImage();
+            return;
+        }
+        if (cursor.getPlaylist().size() == 1 && imageInfo.equals(lastShown) && imageView.getImage() != null) {
+            // Vienīgais attēls jau redzams - nekas netiek ielādēts līdz kataloga izmaiņām
+            slideshow.stop();
+            return;
+        }
+
+        CompletableFuture<Image> future = prefetcher.request(imageInfo);
+
+        if (!future.isDone()) {
+            // Attēls vēl tiek ielādēts fonā - parādīt, tiklīdz gatavs, nebloķējot UI
+            if (waitingFor != imageInfo) {
+                waitingFor = imageInfo;
+                future.whenComplete((image, error) -> Platform.runLater(() -> {
+                    if (waitingFor == imageInfo) {
+                        waitingFor = null;
+                        showNextImage();
+                        slideshow.playFromStart();
+                    }
+                }));
+            }
+            return;
+        }
+        waitingFor = null;
+
+        Image image = null;
+        try {
+            image = future.getNow(null);
+        } catch (Exception e) {
+            updateStatus("Kļūda rādot attēlu: " + e.getMessage());
+        }
+
+        if (image != null) {
+            setImage(image);
+            lastShown = imageInfo;
+
+            cursor.advance();
+            int index = cursor.getIndex();
+            int size = cursor.getPlaylist().size();
+            updateStatus("Rāda: " + imageInfo.getFileName() + " (" +
+                        imageInfo.getSourceId() + ") " +
+                        "(" + (index == 0 ? size : index) +
+                        "/" + size + ")");
+
+            prefetcher.prefetch(cursor.getPlaylist().getImages(), index);
+        } else {
+            // Izņemt bojāto attēlu un uzreiz pāriet uz nākamo
+            DisplayMetrics.get().recordSkippedImage();
+            prefetcher.forget(imageInfo);
+            catalog.markBroken(imageInfo);
+            updateStatus("Izlaists bojāts attēls: " + imageInfo.getFileName());
+            showNextImage();
+        }
+    }
+
+    /**
+     * Nomaina redzamo attēlu; animētie GIF tiek atskaņoti tikai, kamēr redzami.
+     */
+    private void setImage(Image image) {
+        Image previous = imageView.getImage();
+        if (previous == image) {
+            return;
+        }
+        if (previous instanceof AnimatedGifImage) {
+            ((AnimatedGifImage) previous).stop();
+        }
+        imageView.setImage(image);
+        if (image instanceof AnimatedGifImage) {
+            ((AnimatedGifImage) image).play();
+        }
+    }
+
+    private void showPlaceholderImage() {
+        setImage(null);
+        String message = "Nav attēlu";
+        if (include != null && !catalog.getPlaylist().isEmpty()) {
+            message += "\n\nNeviens attēls neatbilst maskai: " + setting("include", "");
+        } else {
+            message += "\n\n" + catalog.describeSources();
+        }
+        updateStatus(message);
+    }
+
+    /**
+     * Parāda saglabāto katalogu un pēdējo kadru, kamēr katalogs tiek atjaunots fonā.
+     */
+    public void restoreState() {
+        PlaylistState state = PlaylistState.load(stateFile);
+        if (state == null) {
+            return;
+        }
+
+        // Saglabāts viss katalogs, tāpēc pirmais atjaunotais logs der arī pārējiem
+        Playlist restored = select(catalog.restore(state.getImages()));
+        if (restored.isEmpty()) {
+            return;
+        }
+        cursor.sync(restored);
+
+        ImageInfo shown = state.getShown();
+        if (shown != null) {
+            cursor.moveTo(shown);
+            // Pirmais kadrs no sagatavoto slaidu kešatmiņas - bez dekodēšanas
+            ImageInfo first = cursor.current();
+            Image image = loader.loadPrepared(first, state.getTargetWidth(), state.getTargetHeight());
+            if (image != null) {
+                prefetcher.offer(first, image);
+            }
+        }
+        updateStatus("Atjaunots saglabātais katalogs: " + restored.size() + " attēli");
+    }
+
+    /**
+     * Saglabā katalogu un pēdējo rādīto attēlu fonā, ja kopš pēdējās reizes kas mainījies.
+     */
+    public Future<?> saveState(ExecutorService writer) {
+        Playlist current = source;
+        if (current == null || current.isEmpty() || (current == savedPlaylist && lastShown == savedShown)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        savedPlaylist = current;
+        savedShown = lastShown;
+
+        PlaylistState state = new PlaylistState(current.getImages(), current.getImages().indexOf(lastShown),
+                                                decoder.getTargetWidth(), decoder.getTargetHeight());
+        return writer.submit(() -> {
+            try {
+                state.save(stateFile);
+            } catch (IOException e) {
+                updateStatus("Kļūda saglabājot stāvokli: " + e.getMessage());
+            }
+        });
+    }
+
+    public void updateTime(String text) {
+        timeLabel.setText(text);
+    }
+
+    /**
+     * Parāda ziņojumu šī loga statusa rindā; drīkst izsaukt no jebkura pavediena.
+     */
+    public void postStatus(String message) {
+        statusUpdater.post(message);
+    }
+
+    private void updateStatus(String message) {
+        AsyncLog.log(logName, message);
+        statusUpdater.post(message);
+    }
+
+    public void stop() {
+        if (slideshow != null) {
+            slideshow.stop();
+        }
+        setImage(null);
+        prefetcher.shutdown();
+    }
+}
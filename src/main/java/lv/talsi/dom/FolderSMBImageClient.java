@@ -0,0 +1,92 @@
+package lv.talsi.dom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * SMB klienta aizstājējs, kas "share" vietā izmanto lokālu mapi.
+ *
+ * Saraksts un lejupielāde iet caur to pašu {@link SMBImageClient} API
+ * (ieskaitot paralēlo {@link #downloadAll}, lasīšanu pa daļām un atvērto
+ * failu uzskaiti) - aizstāts tiek tikai faila atvēršana, tāpēc spoguli un katalogu
+ * var darbināt un mērīt bez īsta SMB servera. Paredzēts veiktspējas
+ * testiem un bezgalvas režīmam.
+ */
+class FolderSMBImageClient extends SMBImageClient {
+
+    private final File folder;
+    private final String remoteFolder;
+
+    public FolderSMBImageClient(Properties config, File folder) {
+        super(config);
+        this.folder = folder;
+        this.remoteFolder = config.getProperty("smb.folder", "Display");
+    }
+
+    @Override
+    public boolean connect() {
+        return true;
+    }
+
+    @Override
+    public boolean probe() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public void disconnect() {
+        // Nav ko aizvērt
+    }
+
+    @Override
+    public List<SMBImageInfo> listImages() {
+        File[] files = folder.listFiles((dir, name) -> ImageInfo.isImageFile(name));
+        if (files == null) {
+            return null;
+        }
+        List<SMBImageInfo> images = new ArrayList<>(files.length);
+        for (File file : files) {
+            images.add(new SMBImageInfo(
+                    file.getName(),
+                    remoteFolder + "/" + file.getName(),
+                    file.lastModified() / 1000,
+                    file.length()));
+        }
+        return images;
+    }
+
+    @Override
+    protected RemoteFile openRemote(String remotePath) throws IOException {
+        String fileName = remotePath.substring(remotePath.lastIndexOf('/') + 1);
+        FileChannel channel = FileChannel.open(new File(folder, fileName).toPath(), StandardOpenOption.READ);
+        return new RemoteFile() {
+            @Override
+            public int read(byte[] buffer, long fileOffset, int bufferOffset, int length) throws IOException {
+                return channel.read(ByteBuffer.wrap(buffer, bufferOffset, length), fileOffset);
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return Channels.newInputStream(channel);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,195 @@
+package lv.talsi.dom;
+
+import javafx.scene.image.Image;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Dekodēto attēlu LRU kešatmiņa, ierobežota pēc pikseļu baitiem.
+ *
+ * Atslēga ir {@link ImageInfo} (avots, ceļš, lastModified un izmērs) kopā ar
+ * variantu (ekrāna izmēru, kuram attēls sagatavots), tāpēc mainīts fails vienmēr
+ * ir jauna atslēga; vecā versija (visi tās varianti) tiek izmesta, tiklīdz
+ * parādās jaunā. Ekrāni ar vienādu izšķirtspēju izmanto tos pašus attēlus.
+ * Ja viss saraksts ietilpst limitā, atkārtotā rādīšana nedara ne I/O, ne dekodēšanu.
+ * Limits attiecas uz Java heap: no {@link RenderCache} kartētie slaidi tiek
+ * skaitīti ar nelielu nominālo izmēru, lai tie neizspiestu dekodētos attēlus,
+ * bet to skaits ir ierobežots atsevišķi: kamēr slaids ir kartēts, Windows
+ * neļauj izdzēst tā failu no sagatavoto slaidu kešatmiņas.
+ */
+class ImageCache {
+
+    private static final int BYTES_PER_PIXEL = 4;
+    // Kartēta slaida pikseļi ir ārpus heap - tiek skaitīts tikai nominālais objekta izmaksu apjoms
+    static final long MAPPED_IMAGE_BYTES = 64 * 1024;
+    static final int DEFAULT_MAX_MAPPED = 32;
+
+    private final long maxBytes;
+    private final int maxMapped;
+    private final LinkedHashMap<Key, Image> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, ImageInfo> byLocation = new HashMap<>();
+    // Cik variantu katrai kešatmiņā esošajai faila versijai
+    private final Map<ImageInfo, Integer> variants = new HashMap<>();
+    private long currentBytes;
+    private int mappedCount;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ImageCache(long maxBytes) {
+        this(maxBytes, DEFAULT_MAX_MAPPED);
+    }
+
+    /**
+     * @param maxMapped cik kartētu slaidu ({@link RenderCache.MappedImage}) turēt vienlaicīgi
+     */
+    public ImageCache(long maxBytes, int maxMapped) {
+        this.maxBytes = maxBytes;
+        this.maxMapped = Math.max(1, maxMapped);
+    }
+
+    /**
+     * Varianta nosaukums ekrāna izmēram.
+     */
+    static String variant(double width, double height) {
+        return (int) width + "x" + (int) height;
+    }
+
+    public synchronized Image get(ImageInfo info, String variant) {
+        Image image = entries.get(new Key(info, variant));
+        if (image != null) {
+            hits++;
+            return image;
+        }
+        misses++;
+        invalidateStale(info);
+        return null;
+    }
+
+    public synchronized void put(ImageInfo info, String variant, Image image) {
+        long size = sizeInBytes(image);
+        if (size > maxBytes) {
+            return;
+        }
+
+        invalidateStale(info);
+        Key key = new Key(info, variant);
+        Image previous = entries.put(key, image);
+        if (previous != null) {
+            currentBytes -= sizeInBytes(previous);
+            mappedCount -= isMapped(previous) ? 1 : 0;
+        } else {
+            variants.merge(info, 1, Integer::sum);
+        }
+        byLocation.put(info.getLocation(), info);
+        currentBytes += size;
+        mappedCount += isMapped(image) ? 1 : 0;
+
+        Iterator<Map.Entry<Key, Image>> it = entries.entrySet().iterator();
+        while ((currentBytes > maxBytes || mappedCount > maxMapped) && it.hasNext()) {
+            Map.Entry<Key, Image> eldest = it.next();
+            // Pāri kartēto limitam tiek izmesti tikai kartētie slaidi
+            if (eldest.getKey().equals(key) ||
+                (currentBytes <= maxBytes && !isMapped(eldest.getValue()))) {
+                continue;
+            }
+            it.remove();
+            removed(eldest.getKey().info, eldest.getValue());
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(ImageInfo info) {
+        remove(info);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byLocation.clear();
+        variants.clear();
+        currentBytes = 0;
+        mappedCount = 0;
+    }
+
+    /**
+     * Izmet iepriekšējo tā paša faila versiju, ja tā mainījusies.
+     */
+    private void invalidateStale(ImageInfo info) {
+        ImageInfo cached = byLocation.get(info.getLocation());
+        if (cached != null && !cached.equals(info)) {
+            remove(cached);
+        }
+    }
+
+    private void remove(ImageInfo info) {
+        if (!variants.containsKey(info)) {
+            return;
+        }
+        Iterator<Map.Entry<Key, Image>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Image> entry = it.next();
+            if (entry.getKey().info.equals(info)) {
+                it.remove();
+                removed(info, entry.getValue());
+            }
+        }
+    }
+
+    private void removed(ImageInfo info, Image image) {
+        currentBytes -= sizeInBytes(image);
+        mappedCount -= isMapped(image) ? 1 : 0;
+        if (variants.merge(info, -1, Integer::sum) == 0) {
+            variants.remove(info);
+            byLocation.remove(info.getLocation(), info);
+        }
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getCurrentBytes() { return currentBytes; }
+    public long getMaxBytes() { return maxBytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    private static boolean isMapped(Image image) {
+        return image instanceof RenderCache.MappedImage;
+    }
+
+    /**
+     * Attēla aptuvenais izmērs Java heap baitos.
+     */
+    static long sizeInBytes(Image image) {
+        if (isMapped(image)) {
+            return MAPPED_IMAGE_BYTES;
+        }
+        return (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+    }
+
+    private static final class Key {
+        final ImageInfo info;
+        final String variant;
+
+        Key(ImageInfo info, String variant) {
+            this.info = info;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return info.equals(other.info) && variant.equals(other.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(info, variant);
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Attēlu katalogs no vienas vai vairākām {@link ImageSource}.
+ *
+ * Kataloga veidošana (avotu sarakstu apvienošana, salīdzināšana) notiek vienā
+ * fona pavedienā; rezultāts tiek publicēts kā nemainīgs {@link Playlist}, un
+ * par izmaiņām tiek paziņots ar {@code onChanged}. Avotu pārbaudes notiek
+ * vienlaicīgi, katra savā pavedienā: katalogs tiek atjaunots, tiklīdz kāds
+ * avots mainījies, un lēns avots pēc taimauta turpina fonā, neaizkavējot citus.
+ * Katalogs nav atkarīgs no JavaFX skatuves, tāpēc to var darbināt arī bezgalvas režīmā.
+ */
+class ImageCatalog {
+
+    private final List<ImageSource> sources;
+    private final Map<String, ImageSource> sourcesById = new LinkedHashMap<>();
+    private final ImageCache imageCache;
+    private final ContentHashes contentHashes;
+    private final Consumer<String> status;
+    private final long sourceTimeoutMillis;
+
+    // Publicētais katalogs (maina tikai fona pavediens un markBroken)
+    private final AtomicReference<Playlist> playlist = new AtomicReference<>(Playlist.EMPTY);
+    private final Set<ImageInfo> brokenImages = ConcurrentHashMap.newKeySet();
+    private int duplicateCount;
+
+    private ScheduledThreadPoolExecutor fileChecker;
+    // Avotu pārbaudes; nepabeigta pārbaude nākamajā kārtā netiek sākta vēlreiz (tikai failu pārbaudes pavedienā)
+    private ExecutorService sourceChecker;
+    private final Map<ImageSource, SourceCheck> runningChecks = new HashMap<>();
+    // Pārbaužu intervāls: kamēr saturs nemainās, tas tiek dubultots līdz maksimumam
+    private long minCheckMillis;
+    private long maxCheckMillis;
+    private long checkDelay;
+    private volatile Runnable onChanged = () -> { };
+
+    /**
+     * @param sources             avoti prioritātes secībā (dublikātu gadījumā paliek pirmais, lokālie pirms attālajiem)
+     * @param contentHashes       saglabātie satura hash dublikātu atpazīšanai starp avotiem
+     * @param sourceTimeoutMillis cik ilgi vienā pārbaudes kārtā gaidīt katru avotu
+     */
+    public ImageCatalog(List<ImageSource> sources, ImageCache imageCache, ContentHashes contentHashes,
+                        Consumer<String> status, long sourceTimeoutMillis) {
+        this.sources = new ArrayList<>(sources);
+        for (ImageSource source : sources) {
+            sourcesById.put(source.getId(), source);
+        }
+        this.imageCache = imageCache;
+        this.contentHashes = contentHashes;
+        this.status = status;
+        this.sourceTimeoutMillis = sourceTimeoutMillis;
+    }
+
+    /**
+     * Izsaukts failu pārbaudes pavedienā ikreiz, kad publicēts jauns katalogs.
+     */
+    public void setOnChanged(Runnable onChanged) {
+        this.onChanged = onChanged;
+    }
+
+    public Playlist getPlaylist() {
+        return playlist.get();
+    }
+
+    public int getBrokenCount() {
+        return brokenImages.size();
+    }
+
+    /**
+     * Apraksts ekrānam, kad nav ko rādīt: katrs avots savā rindā.
+     */
+    public String describeSources() {
+        StringBuilder description = new StringBuilder();
+        for (ImageSource source : sources) {
+            if (description.length() > 0) {
+                description.append('\n');
+            }
+            description.append(source.describe());
+        }
+        return description.toString();
+    }
+
+    /**
+     * Uzsāk kataloga veidošanu fonā un periodiskās pārbaudes. Kamēr saturs
+     * nemainās, pārbaudes kļūst retākas (līdz maxCheckIntervalMillis);
+     * pēc izmaiņām atkal notiek ik pēc checkIntervalMillis.
+     */
+    public void start(long checkIntervalMillis, long maxCheckIntervalMillis) {
+        // Kataloga serviss - katalogs tiek veidots tikai šajā vienā pavedienā
+        fileChecker = new ScheduledThreadPoolExecutor(1);
+        fileChecker.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        AtomicInteger counter = new AtomicInteger();
+        sourceChecker = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "image-source-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Uzreiz parādīt jau zināmo saturu (piem., SMB spoguli), tad pārbaudīt avotus
+        fileChecker.execute(this::refresh);
+        for (ImageSource source : sources) {
+            source.start(this::requestRefresh);
+        }
+
+        minCheckMillis = checkIntervalMillis;
+        maxCheckMillis = Math.max(checkIntervalMillis, maxCheckIntervalMillis);
+        checkDelay = minCheckMillis;
+        fileChecker.execute(this::runCheck);
+    }
+
+    private void scheduleCheck() {
+        if (!fileChecker.isShutdown()) {
+            fileChecker.schedule(this::runCheck, checkDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runCheck() {
+        // Kļūda vienā pārbaudē nedrīkst apturēt turpmākās pārbaudes
+        boolean changed = false;
+        try {
+            changed = checkSources();
+        } catch (Exception e) {
+            status.accept("Kļūda pārbaudot failus: " + e.getMessage());
+        }
+
+        // Atkārtotu savienošanos ierobežo SMB uzraugs, tāpēc bez savienojuma intervāls netiek stiepts
+        boolean unavailable = false;
+        for (ImageSource source : sources) {
+            unavailable |= !source.isAvailable();
+        }
+        if (changed || unavailable) {
+            checkDelay = minCheckMillis;
+        } else if (checkDelay < maxCheckMillis) {
+            checkDelay = Math.min(checkDelay * 2, maxCheckMillis);
+        }
+        scheduleCheck();
+    }
+
+    /**
+     * Atjauno katalogu failu pārbaudes pavedienā; drīkst izsaukt no jebkura pavediena.
+     */
+    private void requestRefresh() {
+        try {
+            if (fileChecker != null && !fileChecker.isShutdown()) {
+                fileChecker.execute(this::refresh);
+            }
+        } catch (RejectedExecutionException e) {
+            // Katalogs jau apturēts
+        }
+    }
+
+    public void stop() {
+        if (fileChecker != null) {
+            fileChecker.shutdown();
+        }
+        if (sourceChecker != null) {
+            sourceChecker.shutdownNow();
+        }
+        for (ImageSource source : sources) {
+            source.stop();
+        }
+    }
+
+    /**
+     * Publicē iepriekš saglabātu katalogu, ja jauns vēl nav izveidots. Attēli,
+     * kuru lokālo failu vairs nav, tiek izlaisti; pirmā atjaunošana fonā
+     * saskaņo katalogu ar faktisko saturu.
+     *
+     * @return publicētais katalogs
+     */
+    public Playlist restore(List<ImageInfo> images) {
+        List<ImageInfo> available = new ArrayList<>();
+        for (ImageInfo info : images) {
+            Path file = getLocalFile(info);
+            if (file != null && Files.isRegularFile(file)) {
+                available.add(info);
+            }
+        }
+        playlist.compareAndSet(Playlist.EMPTY, new Playlist(available));
+        return playlist.get();
+    }
+
+    /**
+     * Izņem bojātu attēlu no kataloga, līdz fails tiek mainīts.
+     */
+    public void markBroken(ImageInfo info) {
+        brokenImages.add(info);
+        imageCache.invalidate(info);
+        playlist.updateAndGet(current -> current.without(info));
+    }
+
+    /**
+     * Lokālais fails, no kura nolasīt attēlu, vai null, ja tas nav pieejams.
+     */
+    public Path getLocalFile(ImageInfo info) {
+        ImageSource source = sourcesById.get(info.getSourceId());
+        return source != null ? source.getLocalFile(info) : null;
+    }
+
+    private List<ImageInfo> buildCatalog() {
+        List<ImageInfo> catalog = new ArrayList<>();
+        for (ImageSource source : sources) {
+            catalog.addAll(source.list());
+        }
+
+        // Bojātos attēlus neņemt vērā, kamēr fails nav mainīts; izdzēstos un
+        // mainītos aizmirst, lai saraksts neaugtu bezgalīgi
+        brokenImages.retainAll(catalog);
+        catalog.removeAll(brokenImages);
+
+        if (sources.size() > 1) {
+            removeDuplicates(catalog);
+        }
+
+        // Kārtot attēlus pēc nosaukuma
+        catalog.sort(CatalogDiff.ORDER);
+        return catalog;
+    }
+
+    /**
+     * Izmet attēlus, kuru saturs sakrīt ar kāda prioritārāka avota attēlu -
+     * lokālais fails ir lētāk nolasāms nekā attālā avota spogulis. Hash tiek
+     * rēķināts tikai failiem, kuru izmērs sakrīt ar kādu failu no cita avota,
+     * un tiek saglabāts starp palaišanām.
+     */
+    private void removeDuplicates(List<ImageInfo> catalog) {
+        contentHashes.retain(catalog);
+
+        Map<Long, List<ImageInfo>> bySize = new HashMap<>();
+        for (ImageInfo info : catalog) {
+            bySize.computeIfAbsent(info.getFileSize(), size -> new ArrayList<>()).add(info);
+        }
+
+        Set<ImageInfo> duplicates = new HashSet<>();
+        for (List<ImageInfo> sameSize : bySize.values()) {
+            if (sameSize.size() < 2 || !fromSeveralSources(sameSize)) {
+                continue;
+            }
+            sameSize.sort(Comparator.comparingInt(this::priority));
+            Map<String, ImageInfo> kept = new HashMap<>();
+            for (ImageInfo info : sameSize) {
+                String hash = contentHash(info);
+                if (hash == null) {
+                    continue;
+                }
+                ImageInfo first = kept.putIfAbsent(hash, info);
+                if (first != null && !first.getSourceId().equals(info.getSourceId())) {
+                    duplicates.add(info);
+                }
+            }
+        }
+        catalog.removeAll(duplicates);
+
+        try {
+            contentHashes.save();
+        } catch (IOException e) {
+            status.accept("Kļūda saglabājot satura hash: " + e.getMessage());
+        }
+        if (duplicates.size() != duplicateCount) {
+            duplicateCount = duplicates.size();
+            status.accept("Izlaisti " + duplicateCount + " attēli, kas jau ir citā avotā");
+        }
+    }
+
+    private static boolean fromSeveralSources(List<ImageInfo> images) {
+        String sourceId = images.get(0).getSourceId();
+        for (ImageInfo info : images) {
+            if (!info.getSourceId().equals(sourceId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int priority(ImageInfo info) {
+        int index = sources.indexOf(sourcesById.get(info.getSourceId()));
+        return info.getSource() == ImageInfo.Source.LOCAL ? index : sources.size() + index;
+    }
+
+    private String contentHash(ImageInfo info) {
+        ImageSource source = sourcesById.get(info.getSourceId());
+        return contentHashes.get(info, source != null ? source.getContentHash(info) : null, getLocalFile(info));
+    }
+
+    /**
+     * Izveido katalogu un, ja tas mainījies, publicē jaunu momentuzņēmumu.
+     * Izsaukt tikai failu pārbaudes pavedienā.
+     */
+    private void refresh() {
+        List<ImageInfo> fresh = buildCatalog();
+
+        while (true) {
+            Playlist current = playlist.get();
+            CatalogDiff diff = CatalogDiff.compare(current.getImages(), fresh);
+            if (diff.isEmpty()) {
+                return;
+            }
+
+            Playlist updated = new Playlist(diff.apply(current.getImages()));
+            if (!playlist.compareAndSet(current, updated)) {
+                // Pa to laiku tika izņemts bojāts attēls - salīdzināt vēlreiz
+                continue;
+            }
+
+            for (ImageInfo info : diff.getRemoved()) {
+                imageCache.invalidate(info);
+            }
+            for (ImageInfo info : diff.getReplaced()) {
+                imageCache.invalidate(info);
+            }
+            // Saturs mainās - nākamās pārbaudes atkal biežas
+            checkDelay = minCheckMillis;
+
+            status.accept("Katalogs atjaunots: +" + diff.getAdded().size() +
+                         " -" + diff.getRemoved().size() +
+                         " ~" + diff.getReplaced().size());
+            updateCatalogStatus(updated);
+            onChanged.run();
+            return;
+        }
+    }
+
+    private void updateCatalogStatus(Playlist catalog) {
+        status.accept("Kopā ielādēti " + catalog.size() + " attēli" +
+                     " (kešatmiņa: " + imageCache.size() + " attēli, " +
+                     (imageCache.getCurrentBytes() / (1024 * 1024)) + "/" + (imageCache.getMaxBytes() / (1024 * 1024)) + " MB, " +
+                     "trāpījumi " + imageCache.getHits() + ", garām " + imageCache.getMisses() +
+                     ", izmesti " + imageCache.getEvictions() + ")");
+    }
+
+    /**
+     * Viena pārbaudes kārta: visi avoti tiek pārbaudīti vienlaicīgi, un katalogs
+     * tiek atjaunots, tiklīdz kāds no tiem mainījies. Avoti, kas neatbild
+     * {@code sourceTimeoutMillis} laikā, turpina fonā un atjauno katalogu paši.
+     * Izsaukt tikai failu pārbaudes pavedienā.
+     *
+     * @return true, ja kāds avots šajā kārtā mainījās
+     */
+    private boolean checkSources() throws InterruptedException {
+        Semaphore finished = new Semaphore(0);
+        List<SourceCheck> round = new ArrayList<>();
+        for (ImageSource source : sources) {
+            SourceCheck previous = runningChecks.get(source);
+            if (previous != null && !previous.isFinished()) {
+                // Iepriekšējā pārbaude vēl turpinās fonā
+                continue;
+            }
+            SourceCheck check = new SourceCheck(source, finished);
+            runningChecks.put(source, check);
+            round.add(check);
+            sourceChecker.execute(check);
+        }
+
+        boolean changed = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sourceTimeoutMillis);
+        int pending = round.size();
+        while (pending > 0) {
+            for (SourceCheck check : round) {
+                if (!check.handled && check.isFinished()) {
+                    check.handled = true;
+                    pending--;
+                    if (check.changed) {
+                        refresh();
+                        changed = true;
+                    }
+                }
+            }
+            long remaining = deadline - System.nanoTime();
+            if (pending == 0 || remaining <= 0) {
+                break;
+            }
+            finished.tryAcquire(remaining, TimeUnit.NANOSECONDS);
+        }
+
+        for (SourceCheck check : round) {
+            if (check.handled) {
+                continue;
+            }
+            if (check.abandon()) {
+                status.accept("Avots " + check.source.getId() + " neatbildēja " +
+                             (sourceTimeoutMillis / 1000) + " s laikā, pārbaude turpinās fonā");
+            } else if (check.changed) {
+                refresh();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Viena avota pārbaude. Ja kārta to vairs negaida, izmaiņas tiek
+     * piemērotas katalogam, tiklīdz pārbaude beidzas.
+     */
+    private final class SourceCheck implements Runnable {
+
+        final ImageSource source;
+        private final Semaphore finished;
+        // Tikai failu pārbaudes pavedienā
+        boolean handled;
+        private boolean done;
+        private boolean abandoned;
+        private boolean changed;
+
+        SourceCheck(ImageSource source, Semaphore finished) {
+            this.source = source;
+            this.finished = finished;
+        }
+
+        @Override
+        public void run() {
+            boolean result = false;
+            try {
+                result = source.check();
+            } catch (Exception e) {
+                status.accept("Kļūda pārbaudot avotu " + source.getId() + ": " + e.getMessage());
+            }
+
+            boolean late;
+            synchronized (this) {
+                changed = result;
+                done = true;
+                late = abandoned;
+            }
+            if (!late) {
+                finished.release();
+            } else if (result) {
+                requestRefresh();
+            }
+        }
+
+        synchronized boolean isFinished() {
+            return done;
+        }
+
+        /**
+         * @return true, ja pārbaude vēl nav beigusies un turpmāk par to rūpējas pati
+         */
+        synchronized boolean abandon() {
+            abandoned = !done;
+            return abandoned;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package lv.talsi.dom;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Dekodē attēlus ekrāna izmērā, nevis faila pilnajā izšķirtspējā.
+ *
+ * Pirms dekodēšanas no faila galvenes nolasa attēla izmērus. Lieli attēli
+ * tiek samazināti jau dekodēšanas laikā (JavaFX ielādētājs mērogo pa rindām),
+ * tāpēc atmiņā nekad neatrodas pilna izmēra pikseļu masīvs. Attēli, kas
+ * pārsniedz pikseļu limitu, netiek dekodēti vispār.
+ *
+ * No faila BMP tiek lasīti joslās un samazināti pakāpeniski, bet animētie GIF
+ * tiek atskaņoti pa kadram ({@link AnimatedGifImage}), tāpēc arī šiem
+ * formātiem atmiņa ir atkarīga no ekrāna, nevis no faila izmēra.
+ */
+class ImageDecoder {
+
+    // Vienā BMP joslā nolasīto avota pikseļu skaits
+    private static final int STRIPE_PIXELS = 1 << 20;
+
+    private final long maxSourcePixels;
+    private final long maxDecodedPixels;
+
+    private volatile double targetWidth;
+    private volatile double targetHeight;
+
+    public ImageDecoder(long maxSourcePixels, long maxDecodedPixels) {
+        this.maxSourcePixels = maxSourcePixels;
+        this.maxDecodedPixels = maxDecodedPixels;
+    }
+
+    public void setTargetSize(double width, double height) {
+        this.targetWidth = width;
+        this.targetHeight = height;
+    }
+
+    public double getTargetWidth() { return targetWidth; }
+    public double getTargetHeight() { return targetHeight; }
+
+    /**
+     * Dekodē attēlu no faila.
+     *
+     * @throws IOException ja attēls ir bojāts vai pārsniedz pikseļu limitu
+     */
+    public Image decode(Path file) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = stream != null ? ImageIO.getImageReaders(stream) : null;
+            if (readers != null && readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(stream, false, false);
+                    String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                    if ("bmp".equals(format)) {
+                        return decodeStripes(reader);
+                    }
+                    if ("gif".equals(format)) {
+                        Image animated = AnimatedGifImage.open(file, reader, this);
+                        if (animated != null) {
+                            return animated;
+                        }
+                    }
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            return decode(input);
+        }
+    }
+
+    /**
+     * Dekodē attēlu no plūsmas. Plūsma netiek aizvērta.
+     *
+     * @throws IOException ja attēls ir bojāts vai pārsniedz pikseļu limitu
+     */
+    public Image decode(InputStream input) throws IOException {
+        byte[] data = input.readAllBytes();
+
+        int[] size = readDimensions(data);
+        double requestedWidth = 0;
+        double requestedHeight = 0;
+
+        if (size != null) {
+            long sourcePixels = (long) size[0] * size[1];
+            if (sourcePixels > maxSourcePixels) {
+                throw new IOException("Attēls pārāk liels: " + size[0] + "x" + size[1]);
+            }
+
+            double scale = fitScale(size[0], size[1]);
+            if (scale < 1.0) {
+                requestedWidth = Math.max(1, Math.floor(size[0] * scale));
+                requestedHeight = Math.max(1, Math.floor(size[1] * scale));
+            }
+        } else if (targetWidth > 0 && targetHeight > 0) {
+            // Izmērus nevarēja nolasīt - ļaut JavaFX iekļaut attēlu ekrāna rāmī
+            requestedWidth = targetWidth;
+            requestedHeight = targetHeight;
+        }
+
+        long start = System.nanoTime();
+        Image image = new Image(new ByteArrayInputStream(data), requestedWidth, requestedHeight, true, true);
+        DisplayMetrics.get().recordDecode(System.nanoTime() - start);
+        if (image.isError()) {
+            Exception e = image.getException();
+            throw new IOException(e != null ? e.getMessage() : "Nezināma dekodēšanas kļūda", e);
+        }
+        return image;
+    }
+
+    /**
+     * Nolasa BMP joslās un katru joslu uzreiz samazina (vidējojot pikseļus),
+     * tāpēc atmiņā ir tikai viena josla un rezultāts ekrāna izmērā.
+     *
+     * Saspiestam (RLE) BMP katra josla tiktu atkodēta no faila sākuma, tāpēc tas
+     * tiek nolasīts vienā piegājienā, izlaižot pikseļus līdz ne vairāk kā divkāršam
+     * mērķa izmēram, un tad samazināts tāpat.
+     */
+    private Image decodeStripes(ImageReader reader) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        double scale = scaleFor(width, height);
+        int targetWidth = (int) Math.max(1, Math.floor(width * scale));
+        int targetHeight = (int) Math.max(1, Math.floor(height * scale));
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        boolean striped = isUncompressedBmp(reader);
+        int stripeRows;
+        if (striped) {
+            stripeRows = Math.max(1, STRIPE_PIXELS / width);
+        } else {
+            int step = Math.max(1, Math.min(width / (2 * targetWidth), height / (2 * targetHeight)));
+            param.setSourceSubsampling(step, step, 0, 0);
+            width = (width + step - 1) / step;
+            height = (height + step - 1) / step;
+            stripeRows = height;
+        }
+
+        long start = System.nanoTime();
+        int[] result = new int[targetWidth * targetHeight];
+        long[] sums = new long[targetWidth * 4];
+        int[] counts = new int[targetWidth];
+        int[] columns = new int[width];
+        for (int x = 0; x < width; x++) {
+            columns[x] = (int) ((long) x * targetWidth / width);
+        }
+        int[] row = new int[width];
+
+        int targetRow = 0;
+        for (int top = 0; top < height; top += stripeRows) {
+            int rows = Math.min(stripeRows, height - top);
+            if (striped) {
+                param.setSourceRegion(new Rectangle(0, top, width, rows));
+            }
+            BufferedImage stripe = reader.read(0, param);
+            rows = Math.min(rows, stripe.getHeight());
+            for (int y = 0; y < rows; y++) {
+                int nextRow = (int) ((long) (top + y) * targetHeight / height);
+                if (nextRow != targetRow) {
+                    finishRow(result, targetRow, targetWidth, sums, counts);
+                    targetRow = nextRow;
+                }
+                stripe.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int argb = row[x];
+                    int i = columns[x] * 4;
+                    sums[i] += argb >>> 24;
+                    sums[i + 1] += (argb >> 16) & 0xFF;
+                    sums[i + 2] += (argb >> 8) & 0xFF;
+                    sums[i + 3] += argb & 0xFF;
+                    counts[columns[x]]++;
+                }
+            }
+        }
+        finishRow(result, targetRow, targetWidth, sums, counts);
+
+        WritableImage image = new WritableImage(targetWidth, targetHeight);
+        image.getPixelWriter().setPixels(0, 0, targetWidth, targetHeight,
+                PixelFormat.getIntArgbInstance(), result, 0, targetWidth);
+        DisplayMetrics.get().recordDecode(System.nanoTime() - start);
+        return image;
+    }
+
+    /**
+     * BI_RGB vai BI_BITFIELDS - rindas atrodas zināmā vietā failā, tāpēc joslas var lasīt atsevišķi.
+     */
+    private static boolean isUncompressedBmp(ImageReader reader) throws IOException {
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null || !"javax_imageio_bmp_1.0".equals(metadata.getNativeMetadataFormatName())) {
+            return false;
+        }
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree("javax_imageio_bmp_1.0");
+        for (int i = 0; i < root.getLength(); i++) {
+            if ("Compression".equals(root.item(i).getNodeName())) {
+                String compression = root.item(i).getNodeValue();
+                return "0".equals(compression) || "3".equals(compression);
+            }
+        }
+        return false;
+    }
+
+    private static void finishRow(int[] result, int row, int width, long[] sums, int[] counts) {
+        int offset = row * width;
+        for (int x = 0; x < width; x++) {
+            int count = Math.max(1, counts[x]);
+            int i = x * 4;
+            result[offset + x] = (int) (sums[i] / count) << 24 |
+                                 (int) (sums[i + 1] / count) << 16 |
+                                 (int) (sums[i + 2] / count) << 8 |
+                                 (int) (sums[i + 3] / count);
+            sums[i] = sums[i + 1] = sums[i + 2] = sums[i + 3] = 0;
+            counts[x] = 0;
+        }
+    }
+
+    /**
+     * Mērogs, kādā dekodēt width x height attēlu.
+     *
+     * @throws IOException ja attēls pārsniedz avota pikseļu limitu
+     */
+    double scaleFor(int width, int height) throws IOException {
+        if ((long) width * height > maxSourcePixels) {
+            throw new IOException("Attēls pārāk liels: " + width + "x" + height);
+        }
+        return fitScale(width, height);
+    }
+
+    /**
+     * Mēroga koeficients (ne lielāks par 1), ar kuru attēls ietilpst gan
+     * ekrānā, gan dekodēto pikseļu limitā.
+     */
+    private double fitScale(int width, int height) {
+        double scale = 1.0;
+        if (targetWidth > 0 && targetHeight > 0) {
+            scale = Math.min(scale, Math.min(targetWidth / width, targetHeight / height));
+        }
+        double pixels = (double) width * height * scale * scale;
+        if (pixels > maxDecodedPixels) {
+            scale *= Math.sqrt(maxDecodedPixels / pixels);
+        }
+        return scale;
+    }
+
+    /**
+     * Nolasa attēla platumu un augstumu no galvenes, nedekodējot pikseļus.
+     */
+    static int[] readDimensions(byte[] data) {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            if (stream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package lv.talsi.dom;
+
+import java.util.Objects;
+
+// Palīgklase attēlu informācijas glabāšanai
+class ImageInfo {
+    // Avota veids; konkrēto avotu (ja to ir vairāki) nosaka sourceId
+    public enum Source { LOCAL, SMB }
+
+    private final String fileName;
+    private final Source source;
+    private final String sourceId;
+    private final String path;
+    private final long lastModified;
+    private final long fileSize;
+
+    public ImageInfo(String fileName, Source source, String path, long lastModified, long fileSize) {
+        this(fileName, source, source.name(), path, lastModified, fileSize);
+    }
+
+    /**
+     * @param sourceId avota nosaukums ({@link ImageSource#getId()}); noklusējuma avotiem tas ir veida nosaukums
+     */
+    public ImageInfo(String fileName, Source source, String sourceId, String path, long lastModified, long fileSize) {
+        this.fileName = fileName;
+        this.source = source;
+        this.sourceId = sourceId;
+        this.path = path;
+        this.lastModified = lastModified;
+        this.fileSize = fileSize;
+    }
+
+    public String getFileName() { return fileName; }
+    public Source getSource() { return source; }
+    public String getSourceId() { return sourceId; }
+    public String getPath() { return path; }
+    public long getLastModified() { return lastModified; }
+    public long getFileSize() { return fileSize; }
+
+    /**
+     * Faila atrašanās vieta neatkarīgi no versijas (lastModified/izmēra).
+     */
+    public String getLocation() { return sourceId + ":" + path; }
+
+    /**
+     * Vai faila nosaukums ir atbalstīts attēla formāts.
+     */
+    public static boolean isImageFile(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".jpg") || lower.endsWith(".jpeg") ||
+               lower.endsWith(".png") || lower.endsWith(".gif") ||
+               lower.endsWith(".bmp");
+    }
+
+    /**
+     * Vai nosaukums no ārēja saraksta (manifests, relejs) ir tikai faila nosaukums:
+     * bez mapju atdalītājiem, diska prefiksa un {@code ..}, lai to varētu droši
+     * izmantot lokālās mapes ceļā.
+     */
+    public static boolean isSafeFileName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.contains("..") &&
+               name.indexOf('/') < 0 && name.indexOf('\\') < 0 && name.indexOf(':') < 0 &&
+               name.indexOf('\0') < 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ImageInfo)) return false;
+        ImageInfo other = (ImageInfo) o;
+        return source == other.source &&
+               sourceId.equals(other.sourceId) &&
+               lastModified == other.lastModified &&
+               fileSize == other.fileSize &&
+               path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sourceId, path, lastModified, fileSize);
+    }
+}
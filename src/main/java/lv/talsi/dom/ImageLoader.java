@@ -0,0 +1,103 @@
+package lv.talsi.dom;
+
+import javafx.scene.image.Image;
+
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Ielādē attēlu no kešatmiņas, no sagatavoto slaidu kešatmiņas uz diska vai
+ * dekodē to no lokālā faila (arī SMB spoguļa) dekodētāja ekrāna izmērā.
+ * Katram ekrāna izmēram savs ielādētājs; kešatmiņas var būt kopīgas.
+ * Drīkst izsaukt no vairākiem fona pavedieniem vienlaicīgi.
+ */
+class ImageLoader {
+
+    private final ImageCatalog catalog;
+    private final ImageDecoder decoder;
+    private final ImageCache imageCache;
+    private final RenderCache renderCache;
+    private final Consumer<String> status;
+
+    /**
+     * @param renderCache sagatavoto slaidu kešatmiņa vai null, ja netiek izmantota
+     */
+    public ImageLoader(ImageCatalog catalog, ImageDecoder decoder, ImageCache imageCache,
+                       RenderCache renderCache, Consumer<String> status) {
+        this.catalog = catalog;
+        this.decoder = decoder;
+        this.imageCache = imageCache;
+        this.renderCache = renderCache;
+        this.status = status;
+    }
+
+    /**
+     * @return attēls vai null, ja fails bojāts vai nav pieejams
+     */
+    public Image load(ImageInfo imageInfo) {
+        double width = decoder.getTargetWidth();
+        double height = decoder.getTargetHeight();
+        String variant = ImageCache.variant(width, height);
+        Image cached = imageCache.get(imageInfo, variant);
+        if (cached != null) {
+            return cached;
+        }
+
+        long start = System.nanoTime();
+        Image image;
+        if (usesRenderCache(imageInfo)) {
+            image = renderCache.get(imageInfo, width, height);
+            if (image == null) {
+                image = decode(imageInfo);
+                if (image != null) {
+                    // Turpmāk tiek rādīta kartētā kopija; dekodētais attēls heap vairs netiek turēts
+                    image = renderCache.put(imageInfo, width, height, image);
+                }
+            }
+        } else {
+            image = decode(imageInfo);
+        }
+        DisplayMetrics.get().recordLoad(imageInfo.getSource(), System.nanoTime() - start);
+        if (image != null) {
+            imageCache.put(imageInfo, variant, image);
+        }
+        return image;
+    }
+
+    /**
+     * Jau sagatavots attēls (atmiņā vai sagatavoto slaidu kešatmiņā norādītajam
+     * ekrāna izmēram) bez dekodēšanas, vai null.
+     */
+    public Image loadPrepared(ImageInfo imageInfo, double targetWidth, double targetHeight) {
+        String variant = ImageCache.variant(targetWidth, targetHeight);
+        Image cached = imageCache.get(imageInfo, variant);
+        if (cached != null || !usesRenderCache(imageInfo)) {
+            return cached;
+        }
+        Image image = renderCache.get(imageInfo, targetWidth, targetHeight);
+        if (image != null) {
+            imageCache.put(imageInfo, variant, image);
+        }
+        return image;
+    }
+
+    private boolean usesRenderCache(ImageInfo imageInfo) {
+        // Animētie GIF saglabātos kā viens kadrs
+        return renderCache != null && !imageInfo.getFileName().toLowerCase().endsWith(".gif");
+    }
+
+    private Image decode(ImageInfo imageInfo) {
+        try {
+            Path localFile = catalog.getLocalFile(imageInfo);
+            if (localFile != null) {
+                return decoder.decode(localFile);
+            }
+        } catch (Exception e) {
+            status.accept("Kļūda ielādējot attēlu: " + imageInfo.getFileName() + " - " + e.getMessage());
+        } catch (OutOfMemoryError e) {
+            // Labāk izlaist vienu attēlu nekā apturēt visu ekrānu
+            status.accept("Nepietiek atmiņas attēlam: " + imageInfo.getFileName());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+package lv.talsi.dom;
+
+import javafx.scene.image.Image;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Fonā ielādē un dekodē nākamos slaidus, lai slaidu maiņa JavaFX pavedienā
+ * tikai nomainītu jau gatavu {@link Image}.
+ *
+ * Visas metodes jāizsauc no JavaFX pavediena; paša ielāde notiek
+ * ierobežotā fona pavedienu kopā.
+ */
+class ImagePrefetcher {
+
+    private final Function<ImageInfo, Image> loader;
+    private final int depth;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Map<ImageInfo, CompletableFuture<Image>> pending = new HashMap<>();
+
+    public ImagePrefetcher(Function<ImageInfo, Image> loader, int depth, int threads) {
+        this(loader, depth, newPool(threads), true);
+    }
+
+    /**
+     * Ielāde notiek kopīgā pavedienu kopā (piem., vairākiem ekrāniem); {@link #shutdown()} to neaptur.
+     */
+    public ImagePrefetcher(Function<ImageInfo, Image> loader, int depth, ExecutorService executor) {
+        this(loader, depth, executor, false);
+    }
+
+    private ImagePrefetcher(Function<ImageInfo, Image> loader, int depth, ExecutorService executor,
+                            boolean ownsExecutor) {
+        this.loader = loader;
+        this.depth = Math.max(1, depth);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    static ExecutorService newPool(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "image-prefetch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Ieplāno ielādi attēliem no {@code fromIndex} līdz {@code fromIndex + depth}
+     * (cikliski) un atceļ ielādes, kas vairs neietilpst šajā logā.
+     */
+    public void prefetch(List<ImageInfo> playlist, int fromIndex) {
+        if (playlist.isEmpty()) {
+            clear();
+            return;
+        }
+
+        // Secībā pēc attāluma, lai tuvākais slaids netiktu ieplānots aiz tālākajiem
+        Set<ImageInfo> window = new LinkedHashSet<>();
+        int count = Math.min(depth + 1, playlist.size());
+        for (int i = 0; i < count; i++) {
+            window.add(playlist.get((fromIndex + i) % playlist.size()));
+        }
+
+        Iterator<Map.Entry<ImageInfo, CompletableFuture<Image>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ImageInfo, CompletableFuture<Image>> entry = it.next();
+            if (!window.contains(entry.getKey())) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+
+        for (ImageInfo info : window) {
+            request(info);
+        }
+    }
+
+    /**
+     * Atgriež attēla ielādes rezultātu; ja ielāde vēl nav ieplānota, to ieplāno.
+     * Rezultāts {@code null} nozīmē bojātu vai nepieejamu attēlu.
+     */
+    public CompletableFuture<Image> request(ImageInfo info) {
+        return pending.computeIfAbsent(info,
+                key -> CompletableFuture.supplyAsync(() -> loader.apply(key), executor));
+    }
+
+    /**
+     * Pievieno jau gatavu attēlu, lai tas tiktu parādīts bez ielādes.
+     */
+    public void offer(ImageInfo info, Image image) {
+        pending.put(info, CompletableFuture.completedFuture(image));
+    }
+
+    /**
+     * Aizmirst attēlu (piem., bojātu), lai nākamreiz to ielādētu no jauna.
+     */
+    public void forget(ImageInfo info) {
+        CompletableFuture<Image> future = pending.remove(info);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    public void clear() {
+        for (CompletableFuture<Image> future : pending.values()) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    public void shutdown() {
+        clear();
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package lv.talsi.dom;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Viens attēlu avots (lokālā mape, SMB koplietojums u.c.).
+ *
+ * {@link #check()} var būt lēns (tīkls, lejupielāde) un tiek izsaukts
+ * atsevišķā pavedienā ar taimautu, nekad vienlaicīgi tam pašam avotam;
+ * {@link #list()} un {@link #getLocalFile(ImageInfo)} atgriež jau zināmo
+ * stāvokli un nedrīkst gaidīt uz {@code check()}.
+ */
+interface ImageSource {
+
+    /**
+     * Avota nosaukums; tiek saglabāts kopā ar attēliem ({@link ImageInfo#getSourceId()}).
+     */
+    String getId();
+
+    ImageInfo.Source getKind();
+
+    /**
+     * Uzsāk sekošanu izmaiņām (ja avots to var); {@code onChanged} tiek
+     * izsaukts, kad {@link #list()} mainījies ārpus {@link #check()}.
+     */
+    void start(Runnable onChanged);
+
+    /**
+     * Salīdzina ar faktisko saturu un atjauno sarakstu.
+     *
+     * @return true, ja {@link #list()} mainījās
+     */
+    boolean check() throws Exception;
+
+    /**
+     * Pēdējais zināmais attēlu saraksts (nekārtots).
+     */
+    List<ImageInfo> list();
+
+    /**
+     * Lokālais fails, no kura nolasīt attēlu, vai null, ja tas nav pieejams.
+     */
+    Path getLocalFile(ImageInfo info);
+
+    /**
+     * Jau zināmais satura SHA-256 (piem., no manifesta) vai null.
+     */
+    default String getContentHash(ImageInfo info) {
+        return null;
+    }
+
+    /**
+     * Vai avots pašlaik sasniedzams; nepieejamu avotu pārbauda biežāk.
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Avota apraksts ekrānam, kad nav ko rādīt.
+     */
+    String describe();
+
+    void stop();
+}
@@ -4,55 +4,83 @@ import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.geometry.Pos;
-import javafx.scene.Scene;
-import javafx.scene.control.Label;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
-import javafx.scene.text.Font;
-import javafx.scene.text.FontWeight;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
 import java.io.*;
-import java.nio.file.*;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class InfoEkrani extends Application {
     
-    private String localImagesFolder;
-    private int slideshowInterval;
+    private static final DateTimeFormatter CLOCK_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss  dd.MM.yyyy");
+    
     private int fileCheckInterval;
+    private int fileCheckMaxInterval;
     private String mode;
+    private String sourceNames;
+    private long sourceTimeout;
+    private long localWatchDebounce;
+    private int metricsHttpPort;
+    private String metricsHttpHost;
+    private int prefetchThreads;
+    private long cacheMaxBytes;
+    private int cacheMaxMapped;
+    private boolean renderCacheEnabled;
+    private String relayUrl;
+    private int relayServerPort;
+    private String relayServerHost;
+    private int stateSaveInterval;
+    private String displayScreens;
+    private OperatingHours operatingHours = OperatingHours.ALWAYS;
     
-    private ImageView imageView;
-    private Label timeLabel;
-    private Label statusLabel;
-    private List<ImageInfo> imageInfos = new ArrayList<>();
-    private int currentImageIndex = 0;
-    private Timeline slideshow;
-    private ScheduledExecutorService fileChecker;
-    private long lastModified = 0;
+    // Katalogs tiek veidots fonā; JavaFX pavedienā tikai pozīcija tajā katrā ekrānā
+    private ImageCatalog catalog;
+    // Viens logs katram ekrānam; katalogs, kešatmiņas un ielādes pavedieni ir kopīgi
+    private final List<DisplayWindow> windows = new ArrayList<>();
+    private ImageCache imageCache;
+    private RenderCache renderCache;
+    private ExecutorService loadExecutor;
+    // Saglabātais stāvoklis ātrai startēšanai (tiek rakstīts fonā)
+    private ExecutorService stateWriter;
+    private Timeline clock;
+    // Retie taimeri (saglabāšana, darba laiks) ārpus JavaFX, lai miega laikā JavaFX taimeris stāvētu
+    private ScheduledExecutorService timers;
+    private ScheduledFuture<?> saveTask;
+    // Ārpus darba laika ekrāni ir melni un taimeri apturēti
+    private boolean sleeping;
     
-    private SMBImageClient smbClient;
+    // Attēlu avoti prioritātes secībā
+    private final List<ImageSource> sources = new ArrayList<>();
+    private MetricsHttpServer metricsServer;
+    private ContentRelayServer relayServer;
     private Properties config;
     
     @Override
     public void start(Stage primaryStage) {
         loadConfig();
-        setupUI(primaryStage);
-        setupSMBClient();
-        setupFileMonitoring();
-        loadImages();
+        setupSources();
+        setupCatalog();
+        setupDisplays(primaryStage);
+        // Pēdējais zināmais katalogs un kadrs tiek parādīts uzreiz
+        restoreState();
+        setupMetrics();
         startSlideshow();
         startClock();
+        startStateSaving();
+        startSchedule();
+        // Katalogs tiek veidots fonā un parādīsies, tiklīdz būs gatavs
+        setupFileMonitoring();
     }
     
     private void loadConfig() {
@@ -74,329 +102,365 @@ public class InfoEkrani extends Application {
                 updateStatus("Kļūda ielādējot konfigurāciju: " + e.getMessage());
             }
         }
+        AsyncLog.configure(config);
         
-        localImagesFolder = config.getProperty("local.images.folder", "images");
-        slideshowInterval = Integer.parseInt(config.getProperty("slideshow.interval", "10"));
         fileCheckInterval = Integer.parseInt(config.getProperty("file.check.interval", "30"));
+        fileCheckMaxInterval = Integer.parseInt(config.getProperty("file.check.max.interval", "600"));
         mode = config.getProperty("mode", "local");
-        
-        updateStatus("Režīms: " + mode);
-    }
-    
-    private void setupSMBClient() {
-        if ("smb".equals(mode) || "hybrid".equals(mode)) {
-            smbClient = new SMBImageClient(config);
-            // Mēģināt savienojumu fonā
-            new Thread(() -> {
-                if (smbClient.connect()) {
-                    Platform.runLater(() -> updateStatus("SMB savienojums izveidots"));
-                } else {
-                    Platform.runLater(() -> updateStatus("SMB savienojums neizdevās"));
-                }
-            }).start();
+        sourceNames = config.getProperty("sources", "").trim();
+        sourceTimeout = Long.parseLong(config.getProperty("source.timeout.sec", "20"));
+        localWatchDebounce = Long.parseLong(config.getProperty("local.watch.debounce.ms", "500"));
+        metricsHttpPort = Integer.parseInt(config.getProperty("metrics.http.port", "0"));
+        metricsHttpHost = config.getProperty("metrics.http.host", "127.0.0.1");
+        prefetchThreads = Integer.parseInt(config.getProperty("prefetch.threads", "2"));
+        // Kešatmiņa nekad neaizņem vairāk par ceturto daļu no Java heap
+        cacheMaxBytes = Math.min(Long.parseLong(config.getProperty("cache.max.mb", "256")) * 1024 * 1024,
+                                 Runtime.getRuntime().maxMemory() / 4);
+        cacheMaxMapped = Integer.parseInt(config.getProperty("cache.max.mapped", String.valueOf(ImageCache.DEFAULT_MAX_MAPPED)));
+        renderCacheEnabled = Boolean.parseBoolean(config.getProperty("render.cache.enabled", "true"));
+        relayUrl = config.getProperty("relay.url", "").trim();
+        relayServerPort = Integer.parseInt(config.getProperty("relay.server.port", "0"));
+        relayServerHost = config.getProperty("relay.server.host", "0.0.0.0");
+        stateSaveInterval = Integer.parseInt(config.getProperty("state.save.interval", "60"));
+        displayScreens = config.getProperty("display.screens", "primary").trim();
+        try {
+            operatingHours = OperatingHours.parse(config.getProperty("schedule.hours", ""),
+                                                  config.getProperty("schedule.days", ""));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            updateStatus("Nederīgs darba laiks, ekrāns strādās visu diennakti: " + e.getMessage());
         }
     }
     
-    private void setupUI(Stage primaryStage) {
-        // Izveidot UI elementus
-        imageView = new ImageView();
-        imageView.setPreserveRatio(true);
-        imageView.setSmooth(true);
-        
-        // Laika rādījums
-        timeLabel = new Label();
-        timeLabel.setTextFill(Color.WHITE);
-        timeLabel.setFont(Font.font("Arial", FontWeight.BOLD, 24));
-        
-        // Statusa rādījums
-        statusLabel = new Label("Sistēma startē...");
-        statusLabel.setTextFill(Color.YELLOW);
-        statusLabel.setFont(Font.font("Arial", FontWeight.NORMAL, 14));
-        
-        // Statusa panelis
-        HBox statusBox = new HBox(20);
-        statusBox.setAlignment(Pos.CENTER);
-        statusBox.getChildren().addAll(timeLabel, statusLabel);
-        statusBox.setStyle("-fx-background-color: rgba(0, 0, 0, 0.7); -fx-padding: 10px;");
-        
-        // Galvenais layout
-        StackPane root = new StackPane();
-        root.setStyle("-fx-background-color: black;");
-        root.getChildren().addAll(imageView, statusBox);
-        StackPane.setAlignment(statusBox, Pos.TOP_CENTER);
-        
-        // Scene un Stage konfigurācija
-        Scene scene = new Scene(root, 800, 600);
-        primaryStage.setTitle("Talsu novada Info Ekrāns");
-        primaryStage.setScene(scene);
-        primaryStage.setFullScreen(true);
-        primaryStage.setFullScreenExitHint("");
-        primaryStage.show();
-        
-        // Pielāgot attēla izmēru logam
-        imageView.fitWidthProperty().bind(scene.widthProperty());
-        imageView.fitHeightProperty().bind(scene.heightProperty().subtract(80));
+    /**
+     * sources - avotu nosaukumi prioritātes secībā; tukšs = pēc mode (hybrid = smb,local).
+     * Iebūvētie "local" un "smb" izmanto vispārīgos iestatījumus, citiem jānorāda
+     * source.<nosaukums>.type=local|smb, un source.<nosaukums>.<atslēga> aizstāj <atslēga>.
+     */
+    private void setupSources() {
+        String names = sourceNames;
+        if (names.isEmpty()) {
+            names = "hybrid".equals(mode) ? "smb,local" : "smb".equals(mode) ? "smb" : "local";
+        }
+
+        for (String part : names.split(",")) {
+            String name = part.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!name.matches("[A-Za-z0-9_-]+")) {
+                updateStatus("Nederīgs avota nosaukums: " + name);
+                continue;
+            }
+            boolean builtIn = "local".equals(name) || "smb".equals(name);
+            String type = builtIn ? name : config.getProperty("source." + name + ".type", "").trim();
+            Properties sourceConfig = sourceConfig(name, builtIn);
+            if ("local".equals(type)) {
+                sources.add(new LocalImageSource(builtIn ? ImageInfo.Source.LOCAL.name() : name,
+                        new File(sourceConfig.getProperty("local.images.folder", "images")),
+                        localWatchDebounce, this::updateStatus));
+            } else if ("smb".equals(type)) {
+                sources.add(createSMBSource(builtIn ? ImageInfo.Source.SMB.name() : name, sourceConfig));
+            } else {
+                updateStatus("Nezināms avota veids '" + type + "' avotam " + name);
+            }
+        }
+
+        StringBuilder ids = new StringBuilder();
+        for (ImageSource source : sources) {
+            ids.append(ids.length() > 0 ? ", " : "").append(source.getId());
+        }
+        updateStatus("Attēlu avoti: " + ids);
     }
-    
-    private void setupFileMonitoring() {
-        // Izveidot lokālo images mapi, ja nepastāv
-        File imagesDir = new File(localImagesFolder);
-        if (!imagesDir.exists()) {
-            imagesDir.mkdirs();
-            updateStatus("Izveidota lokālā mape: " + localImagesFolder);
+
+    /**
+     * Avota iestatījumi: vispārīgie, kurus aizstāj source.<nosaukums>.*.
+     * Papildu avotiem noklusējuma mapes ir images-<nosaukums> un smb-cache-<nosaukums>.
+     */
+    private Properties sourceConfig(String name, boolean builtIn) {
+        Properties sourceConfig = new Properties();
+        sourceConfig.putAll(config);
+        if (!builtIn) {
+            sourceConfig.setProperty("local.images.folder", "images-" + name);
+            sourceConfig.setProperty("smb.mirror.folder", "smb-cache-" + name);
         }
-        
-        // Failu pārbaudes serviss
-        fileChecker = Executors.newScheduledThreadPool(1);
-        fileChecker.scheduleAtFixedRate(this::checkForNewFiles, 
-                                       fileCheckInterval, 
-                                       fileCheckInterval, 
-                                       TimeUnit.SECONDS);
+        String prefix = "source." + name + ".";
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                sourceConfig.setProperty(key.substring(prefix.length()), config.getProperty(key));
+            }
+        }
+        return sourceConfig;
     }
-    
-    private void loadImages() {
-        imageInfos.clear();
-        
-        // Ielādēt no SMB
-        if ("smb".equals(mode) || "hybrid".equals(mode)) {
-            loadSMBImages();
+
+    private SMBImageSource createSMBSource(String id, Properties sourceConfig) {
+        // Relejs izplata un saņem tikai viena (pirmā) SMB avota spoguli
+        boolean first = true;
+        for (ImageSource source : sources) {
+            first &= !(source instanceof SMBImageSource);
         }
-        
-        // Ielādēt lokālos attēlus
-        if ("local".equals(mode) || "hybrid".equals(mode)) {
-            loadLocalImages();
+
+        // Ja norādīts cita ekrāna relejs, saturs vispirms tiek ņemts no tā
+        SMBImageClient client = !first || relayUrl.isEmpty()
+                ? new SMBImageClient(sourceConfig) : new RelaySMBImageClient(sourceConfig, relayUrl);
+
+        // Lokālā kopija ļauj rādīt pēdējo zināmo saturu arī bez servera
+        SMBMirror mirror = new SMBMirror(sourceConfig);
+        mirror.load();
+
+        // Šis ekrāns izplata savu spoguli citiem ekrāniem
+        if (first && relayServerPort > 0) {
+            relayServer = new ContentRelayServer(mirror);
+            relayServer.start(relayServerHost, relayServerPort,
+                    Integer.parseInt(config.getProperty("relay.server.threads", "4")));
         }
-        
-        // Kārtot attēlus pēc nosaukuma
-        imageInfos.sort(Comparator.comparing(ImageInfo::getFileName));
-        
-        updateStatus("Kopā ielādēti " + imageInfos.size() + " attēli");
+        return new SMBImageSource(id, client, mirror, sourceConfig, this::updateStatus);
     }
     
-    private void loadSMBImages() {
-        if (smbClient == null || !smbClient.isConnected()) {
-            updateStatus("Nav SMB savienojuma");
-            return;
-        }
+    private void setupCatalog() {
+        // Dekodētie attēli tiek glabāti atmiņā atkārtotai rādīšanai
+        imageCache = new ImageCache(cacheMaxBytes, cacheMaxMapped);
         
-        try {
-            List<SMBImageClient.SMBImageInfo> smbImages = smbClient.listImages();
-            for (SMBImageClient.SMBImageInfo smbImage : smbImages) {
-                imageInfos.add(new ImageInfo(
-                    smbImage.getFileName(),
-                    ImageInfo.Source.SMB,
-                    smbImage.getRemotePath(),
-                    smbImage.getLastModified()
-                ));
-            }
-            updateStatus("Ielādēti " + smbImages.size() + " attēli no SMB");
-        } catch (Exception e) {
-            updateStatus("Kļūda ielādējot SMB attēlus: " + e.getMessage());
-        }
+        catalog = new ImageCatalog(sources, imageCache, new ContentHashes(ContentHashes.file(config)),
+                                   this::updateStatus, sourceTimeout * 1000);
     }
     
-    private void loadLocalImages() {
-        File imagesDir = new File(localImagesFolder);
-        if (!imagesDir.exists()) {
-            return;
+    private void setupDisplays(Stage primaryStage) {
+        // Slaidi tiek sagatavoti vienreiz un pēc tam rādīti no diska bez dekodēšanas
+        if (renderCacheEnabled) {
+            renderCache = new RenderCache(config);
+            renderCache.load();
         }
+        // Nākamie attēli tiek ielādēti un dekodēti fonā, nevis JavaFX pavedienā - visiem ekrāniem kopā
+        loadExecutor = ImagePrefetcher.newPool(prefetchThreads);
         
-        File[] files = imagesDir.listFiles((dir, name) -> {
-            String lower = name.toLowerCase();
-            return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || 
-                   lower.endsWith(".png") || lower.endsWith(".gif") || 
-                   lower.endsWith(".bmp");
-        });
-        
-        if (files != null) {
-            for (File file : files) {
-                imageInfos.add(new ImageInfo(
-                    file.getName(),
-                    ImageInfo.Source.LOCAL,
-                    file.getAbsolutePath(),
-                    file.lastModified()
-                ));
-            }
-            updateStatus("Ielādēti " + files.length + " lokālie attēli");
-            lastModified = imagesDir.lastModified();
+        List<Screen> all = Screen.getScreens();
+        List<Screen> selected = selectScreens(all);
+        for (Screen screen : selected) {
+            DisplayWindow window = new DisplayWindow(all.indexOf(screen) + 1, windows.isEmpty(), selected.size() == 1,
+                                                     config, catalog, imageCache, renderCache, loadExecutor);
+            window.show(windows.isEmpty() ? primaryStage : new Stage(), screen);
+            windows.add(window);
+        }
+        if (selected.size() > 1) {
+            updateStatus("Ekrāni: " + selected.size());
         }
     }
     
-    private void checkForNewFiles() {
-        // Pārbaudīt SMB savienojumu
-        if (("smb".equals(mode) || "hybrid".equals(mode)) && smbClient != null) {
-            if (!smbClient.isConnected()) {
-                Platform.runLater(() -> updateStatus("Mēģina atjaunot SMB savienojumu..."));
-                if (smbClient.connect()) {
-                    Platform.runLater(() -> updateStatus("SMB savienojums atjaunots"));
+    /**
+     * display.screens: primary (tikai galvenais), all (visi) vai ekrānu numuri, piem. "1,3".
+     */
+    private List<Screen> selectScreens(List<Screen> all) {
+        List<Screen> selected = new ArrayList<>();
+        if ("all".equalsIgnoreCase(displayScreens)) {
+            selected.addAll(all);
+        } else if (!"primary".equalsIgnoreCase(displayScreens)) {
+            for (String part : displayScreens.split(",")) {
+                try {
+                    int number = Integer.parseInt(part.trim());
+                    if (number >= 1 && number <= all.size() && !selected.contains(all.get(number - 1))) {
+                        selected.add(all.get(number - 1));
+                    } else {
+                        updateStatus("Ekrāns " + number + " nav pieejams");
+                    }
+                } catch (NumberFormatException e) {
+                    updateStatus("Nederīgs ekrāna numurs: " + part);
                 }
             }
         }
-        
-        // Pārbaudīt lokālos failus
-        if ("local".equals(mode) || "hybrid".equals(mode)) {
-            File imagesDir = new File(localImagesFolder);
-            if (imagesDir.exists() && imagesDir.lastModified() > lastModified) {
-                Platform.runLater(() -> {
-                    updateStatus("Atrasti jauni lokālie attēli...");
-                    loadImages();
-                    if (!imageInfos.isEmpty()) {
-                        restartSlideshow();
-                    }
-                });
+        if (selected.isEmpty()) {
+            selected.add(Screen.getPrimary());
+        }
+        return selected;
+    }
+    
+    private void setupMetrics() {
+        DisplayMetrics metrics = DisplayMetrics.get();
+        metrics.setCatalogSize(() -> catalog.getPlaylist().size());
+        metrics.setDecodedImageBytes(imageCache::getCurrentBytes);
+        List<SMBImageClient> smbClients = new ArrayList<>();
+        for (ImageSource source : sources) {
+            if (source instanceof SMBImageSource) {
+                smbClients.add(((SMBImageSource) source).getClient());
             }
         }
-        
-        // Pārbaudīt SMB failus (vienmēr pārbaudīt, jo SMB lastModified ir sarežģīti)
-        if (("smb".equals(mode) || "hybrid".equals(mode)) && smbClient != null && smbClient.isConnected()) {
-            Platform.runLater(() -> {
-                loadImages();
-                if (!imageInfos.isEmpty()) {
-                    restartSlideshow();
+        if (!smbClients.isEmpty()) {
+            metrics.setSmbReconnects(() -> {
+                long reconnects = 0;
+                for (SMBImageClient client : smbClients) {
+                    reconnects += client.getSupervisor().getReconnectCount();
                 }
+                return reconnects;
             });
         }
-    }
-    
-    private void startSlideshow() {
-        if (slideshow != null) {
-            slideshow.stop();
-        }
+        metrics.register();
+        metrics.startFxStallProbe();
         
-        slideshow = new Timeline(new KeyFrame(Duration.seconds(slideshowInterval), e -> showNextImage()));
-        slideshow.setCycleCount(Timeline.INDEFINITE);
-        slideshow.play();
-        
-        // Rādīt pirmo attēlu uzreiz
-        showNextImage();
+        // HTTP /metrics tikai, ja norādīts ports
+        if (metricsHttpPort > 0) {
+            metricsServer = new MetricsHttpServer(metrics);
+            metricsServer.start(metricsHttpHost, metricsHttpPort);
+        }
     }
     
-    private void restartSlideshow() {
-        currentImageIndex = 0;
-        startSlideshow();
+    private void setupFileMonitoring() {
+        catalog.setOnChanged(() -> Platform.runLater(this::onPlaylistChanged));
+        catalog.start(fileCheckInterval * 1000L, fileCheckMaxInterval * 1000L);
     }
     
-    private void showNextImage() {
-        if (imageInfos.isEmpty()) {
-            showPlaceholderImage();
-            return;
+    private void onPlaylistChanged() {
+        for (DisplayWindow window : windows) {
+            window.onPlaylistChanged();
         }
-        
-        ImageInfo imageInfo = imageInfos.get(currentImageIndex);
-        
-        try {
-            Image image = loadImage(imageInfo);
-            if (image != null) {
-                imageView.setImage(image);
-                
-                currentImageIndex = (currentImageIndex + 1) % imageInfos.size();
-                updateStatus("Rāda: " + imageInfo.getFileName() + " (" + 
-                            imageInfo.getSource() + ") " +
-                            "(" + (currentImageIndex == 0 ? imageInfos.size() : currentImageIndex) + 
-                            "/" + imageInfos.size() + ")");
-            } else {
-                // Izņemt bojāto attēlu
-                imageInfos.remove(currentImageIndex);
-                if (currentImageIndex >= imageInfos.size()) {
-                    currentImageIndex = 0;
-                }
-                updateStatus("Izlaists bojāts attēls: " + imageInfo.getFileName());
-            }
-            
-        } catch (Exception e) {
-            updateStatus("Kļūda rādot attēlu: " + e.getMessage());
-            // Izņemt bojāto attēlu
-            imageInfos.remove(currentImageIndex);
-            if (currentImageIndex >= imageInfos.size()) {
-                currentImageIndex = 0;
-            }
+        saveState();
+    }
+    
+    private void startSlideshow() {
+        for (DisplayWindow window : windows) {
+            window.startSlideshow();
         }
     }
     
-    private Image loadImage(ImageInfo imageInfo) {
-        try {
-            if (imageInfo.getSource() == ImageInfo.Source.LOCAL) {
-                return new Image(new FileInputStream(imageInfo.getPath()));
-            } else if (imageInfo.getSource() == ImageInfo.Source.SMB) {
-                InputStream inputStream = smbClient.downloadImage(imageInfo.getPath());
-                if (inputStream != null) {
-                    return new Image(inputStream);
-                }
-            }
-        } catch (Exception e) {
-            updateStatus("Kļūda ielādējot attēlu: " + imageInfo.getFileName() + " - " + e.getMessage());
+    private void restoreState() {
+        for (DisplayWindow window : windows) {
+            window.restoreState();
         }
-        return null;
     }
     
-    private void showPlaceholderImage() {
-        imageView.setImage(null);
-        String message = "Nav attēlu";
-        if ("smb".equals(mode)) {
-            message += "\n\nSMB: " + config.getProperty("smb.server") + "/" + config.getProperty("smb.share") + "/" + config.getProperty("smb.folder");
-        } else if ("local".equals(mode)) {
-            message += "\n\nIevietojiet attēlus mapē: " + localImagesFolder;
-        } else {
-            message += "\n\nSMB un lokālā mapē: " + localImagesFolder;
-        }
-        updateStatus(message);
+    private void startStateSaving() {
+        stateWriter = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "state-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        timers = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "display-timers");
+            t.setDaemon(true);
+            return t;
+        });
+        startSaver();
+    }
+    
+    private void startSaver() {
+        saveTask = timers.scheduleWithFixedDelay(() -> Platform.runLater(this::saveState),
+                stateSaveInterval, stateSaveInterval, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Saglabā katra ekrāna stāvokli fonā, ja kopš pēdējās reizes kas mainījies.
+     */
+    private List<Future<?>> saveState() {
+        List<Future<?>> saves = new ArrayList<>();
+        if (stateWriter != null) {
+            for (DisplayWindow window : windows) {
+                saves.add(window.saveState(stateWriter));
+            }
+        }
+        return saves;
     }
     
     private void startClock() {
-        Timeline clock = new Timeline(new KeyFrame(Duration.seconds(1), e -> updateTime()));
+        clock = new Timeline(new KeyFrame(Duration.seconds(1), e -> updateTime()));
         clock.setCycleCount(Timeline.INDEFINITE);
         clock.play();
         updateTime();
     }
     
-    private void updateTime() {
+    private void startSchedule() {
+        if (!operatingHours.isAlways()) {
+            applySchedule();
+        }
+    }
+    
+    /**
+     * Ieslēdz vai izslēdz ekrānus atbilstoši darba laikam un ieplāno nākamo pārbaudi.
+     */
+    private void applySchedule() {
         LocalDateTime now = LocalDateTime.now();
-        timeLabel.setText(now.format(DateTimeFormatter.ofPattern("HH:mm:ss  dd.MM.yyyy")));
+        boolean open = operatingHours.isOpen(now);
+        LocalDateTime next = operatingHours.nextChange(now);
+        
+        if (!open && !sleeping) {
+            sleeping = true;
+            clock.stop();
+            for (DisplayWindow window : windows) {
+                window.sleep();
+            }
+            // Miega laikā nekas nemainās - saglabāt vienreiz un apturēt periodiskos darbus
+            saveState();
+            saveTask.cancel(false);
+            DisplayMetrics.get().stopFxStallProbe();
+            AsyncLog.log(null, "Ārpus darba laika - ekrāni izslēgti" +
+                    (next != null ? " līdz " + next.format(CLOCK_FORMAT) : ""));
+        } else if (open && sleeping) {
+            sleeping = false;
+            for (DisplayWindow window : windows) {
+                window.wake();
+            }
+            startSaver();
+            DisplayMetrics.get().startFxStallProbe();
+            clock.play();
+            updateTime();
+            updateStatus("Darba laiks - ekrāni ieslēgti");
+        }
+        
+        if (next != null && !timers.isShutdown()) {
+            // Ne retāk kā reizi stundā, lai pulksteņa pārlikšana neaizkavētu maiņu
+            long delay = Math.min(ChronoUnit.MILLIS.between(now, next) + 1000, 3_600_000);
+            timers.schedule(() -> Platform.runLater(this::applySchedule), delay, TimeUnit.MILLISECONDS);
+        }
     }
     
+    private void updateTime() {
+        String text = LocalDateTime.now().format(CLOCK_FORMAT);
+        for (DisplayWindow window : windows) {
+            window.updateTime(text);
+        }
+    }
+    
+    /**
+     * Kopīgs ziņojums (katalogs, SMB u.c.) - tiek rādīts visos ekrānos.
+     */
     private void updateStatus(String message) {
-        Platform.runLater(() -> {
-            statusLabel.setText(message);
-            System.out.println("[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "] " + message);
-        });
+        AsyncLog.log(null, message);
+        for (DisplayWindow window : windows) {
+            window.postStatus(message);
+        }
     }
     
     @Override
     public void stop() {
-        if (slideshow != null) {
-            slideshow.stop();
+        if (timers != null) {
+            timers.shutdownNow();
+        }
+        for (DisplayWindow window : windows) {
+            window.stop();
+        }
+        if (stateWriter != null) {
+            for (Future<?> save : saveState()) {
+                try {
+                    save.get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    // Paliek iepriekš saglabātais stāvoklis
+                }
+            }
+            stateWriter.shutdown();
+        }
+        if (catalog != null) {
+            catalog.stop();
+        }
+        if (loadExecutor != null) {
+            loadExecutor.shutdownNow();
         }
-        if (fileChecker != null) {
-            fileChecker.shutdown();
+        if (metricsServer != null) {
+            metricsServer.stop();
         }
-        if (smbClient != null) {
-            smbClient.disconnect();
+        if (relayServer != null) {
+            relayServer.stop();
         }
+        DisplayMetrics.get().stop();
     }
     
     public static void main(String[] args) {
         launch(args);
     }
-    
-    // Palīgklase attēlu informācijas glabāšanai
-    private static class ImageInfo {
-        public enum Source { LOCAL, SMB }
-        
-        private final String fileName;
-        private final Source source;
-        private final String path;
-        private final long lastModified;
-        
-        public ImageInfo(String fileName, Source source, String path, long lastModified) {
-            this.fileName = fileName;
-            this.source = source;
-            this.path = path;
-            this.lastModified = lastModified;
-        }
-        
-        public String getFileName() { return fileName; }
-        public Source getSource() { return source; }
-        public String getPath() { return path; }
-        public long getLastModified() { return lastModified; }
-    }
 }
\ No newline at end of file
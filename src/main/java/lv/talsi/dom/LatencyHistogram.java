@@ -0,0 +1,63 @@
+package lv.talsi.dom;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latentuma histogramma ar fiksētiem intervāliem (Prometheus stilā).
+ */
+class LatencyHistogram {
+
+    // Intervālu augšējās robežas milisekundēs
+    static final long[] BUCKETS_MILLIS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS_MILLIS.length];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long millis = nanos / 1_000_000;
+        for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+            if (millis <= BUCKETS_MILLIS[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() { return count.sum(); }
+    public double getSumSeconds() { return sumNanos.sum() / 1e9; }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : sumNanos.sum() / 1e6 / n;
+    }
+
+    /**
+     * Pieraksta histogrammu Prometheus teksta formātā.
+     *
+     * @param labels papildu etiķetes bez figūriekavām (piem. {@code source="SMB"}) vai tukšs
+     */
+    public void writePrometheus(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix)
+               .append("le=\"").append(BUCKETS_MILLIS[i] / 1000.0).append("\"} ")
+               .append(cumulative).append('\n');
+        }
+        long total = count.sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(total).append('\n');
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(getSumSeconds()).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(total).append('\n');
+    }
+}
@@ -0,0 +1,140 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Seko lokālās attēlu mapes izmaiņām ar {@link WatchService}.
+ *
+ * Notikumi tiek apvienoti: izsaukums notiek tikai tad, kad mapē
+ * {@code debounceMillis} laikā nav bijis jaunu izmaiņu (vai pēc
+ * ilgākais {@code 10 * debounceMillis}), tāpēc 200 failu kopēšana
+ * rada vienu kataloga atjaunināšanu. Ja notikumi pazuduši (OVERFLOW),
+ * izsaukums saņem {@code null} - jāpārskata visa mape.
+ */
+class LocalFolderWatcher {
+
+    private final Path folder;
+    private final long debounceMillis;
+    private final Consumer<Set<String>> onChange;
+
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean active;
+
+    public LocalFolderWatcher(Path folder, long debounceMillis, Consumer<Set<String>> onChange) {
+        this.folder = folder;
+        this.debounceMillis = Math.max(1, debounceMillis);
+        this.onChange = onChange;
+    }
+
+    /**
+     * @return false, ja šajā failu sistēmā sekošana nav iespējama
+     */
+    public boolean start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            folder.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            log("Mapes izmaiņām nevar sekot: " + e.getMessage());
+            stop();
+            return false;
+        }
+
+        active = true;
+        thread = new Thread(this::run, "local-folder-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void stop() {
+        active = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+                // Aizverot kļūdas nav svarīgas
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (active) {
+                WatchKey key = watchService.take();
+                Set<String> changed = new HashSet<>();
+                boolean overflow = collect(key, changed);
+
+                // Gaidīt, līdz izmaiņas norimst
+                long deadline = System.currentTimeMillis() + debounceMillis * 10;
+                while (System.currentTimeMillis() < deadline) {
+                    WatchKey next = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    overflow |= collect(next, changed);
+                }
+
+                if (!active) {
+                    break;
+                }
+                if (overflow) {
+                    onChange.accept(null);
+                } else if (!changed.isEmpty()) {
+                    onChange.accept(changed);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Apturēts
+        } catch (RuntimeException e) {
+            log("Kļūda sekojot mapei: " + e.getMessage());
+        }
+        active = false;
+    }
+
+    /**
+     * @return true, ja notikumi ir pazuduši
+     */
+    private boolean collect(WatchKey key, Set<String> changed) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (event.context() instanceof Path) {
+                changed.add(((Path) event.context()).toString());
+            }
+        }
+        if (!key.reset()) {
+            // Mape izdzēsta vai nepieejama - turpmāk pārbaudīt ar aptauju
+            log("Mapei vairs nevar sekot: " + folder);
+            active = false;
+            overflow = true;
+        }
+        return overflow;
+    }
+
+    private void log(String message) {
+        AsyncLog.log("Mape", message);
+    }
+}
@@ -0,0 +1,63 @@
+package lv.talsi.dom;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lokālā attēlu mape: pilna pārskatīšana un atsevišķu failu pārbaude.
+ */
+class LocalImageFolder {
+
+    private final File folder;
+    private final String sourceId;
+
+    public LocalImageFolder(File folder) {
+        this(folder, ImageInfo.Source.LOCAL.name());
+    }
+
+    public LocalImageFolder(File folder, String sourceId) {
+        this.folder = folder;
+        this.sourceId = sourceId;
+    }
+
+    public File getFolder() { return folder; }
+    public boolean exists() { return folder.exists(); }
+    public long lastModified() { return folder.lastModified(); }
+
+    /**
+     * Visi atbalstītie attēli mapē (nekārtoti).
+     */
+    public List<ImageInfo> scan() {
+        List<ImageInfo> images = new ArrayList<>();
+        File[] files = folder.listFiles((dir, name) -> ImageInfo.isImageFile(name));
+        if (files != null) {
+            for (File file : files) {
+                images.add(toImageInfo(file));
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Viena faila pašreizējais stāvoklis vai null, ja tas izdzēsts vai nav attēls.
+     */
+    public ImageInfo stat(String name) {
+        if (!ImageInfo.isImageFile(name)) {
+            return null;
+        }
+        File file = new File(folder, name);
+        return file.isFile() ? toImageInfo(file) : null;
+    }
+
+    private ImageInfo toImageInfo(File file) {
+        return new ImageInfo(
+            file.getName(),
+            ImageInfo.Source.LOCAL,
+            sourceId,
+            file.getAbsolutePath(),
+            file.lastModified(),
+            file.length()
+        );
+    }
+}
@@ -0,0 +1,143 @@
+package lv.talsi.dom;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Lokālās mapes attēli. Izmaiņas tiek saņemtas no {@link LocalFolderWatcher};
+ * mapes izmaiņu laika aptauja paliek tikai rezervei, ja sekošana nav iespējama.
+ */
+class LocalImageSource implements ImageSource {
+
+    private final String id;
+    private final LocalImageFolder folder;
+    private final long watchDebounceMillis;
+    private final Consumer<String> status;
+
+    // Attēli pēc faila nosaukuma (pārbaudes un mapes sekotāja pavedienos, sinhronizēti)
+    private final Map<String, ImageInfo> images = new HashMap<>();
+    private boolean scanned;
+    private long lastModified = 0;
+    private volatile List<ImageInfo> snapshot = Collections.emptyList();
+    private LocalFolderWatcher watcher;
+
+    public LocalImageSource(String id, File folder, long watchDebounceMillis, Consumer<String> status) {
+        this.id = id;
+        this.folder = new LocalImageFolder(folder, id);
+        this.watchDebounceMillis = watchDebounceMillis;
+        this.status = status;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public ImageInfo.Source getKind() {
+        return ImageInfo.Source.LOCAL;
+    }
+
+    @Override
+    public void start(Runnable onChanged) {
+        // Izveidot lokālo images mapi, ja nepastāv
+        File dir = folder.getFolder();
+        if (!dir.exists()) {
+            dir.mkdirs();
+            status.accept("Izveidota lokālā mape: " + dir);
+        }
+
+        watcher = new LocalFolderWatcher(dir.toPath(), watchDebounceMillis, changed -> {
+            onFilesChanged(changed);
+            onChanged.run();
+        });
+        if (watcher.start()) {
+            status.accept("Seko lokālās mapes izmaiņām: " + dir);
+        }
+    }
+
+    @Override
+    public synchronized boolean check() {
+        // Pirmā pārbaude nolasa visu mapi; pēc tam tikai, ja mapes izmaiņām nevar sekot
+        if (!scanned) {
+            scan();
+            return true;
+        }
+        if ((watcher == null || !watcher.isActive()) &&
+            folder.exists() && folder.lastModified() > lastModified) {
+            status.accept("Atrasti jauni lokālie attēli...");
+            scan();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public List<ImageInfo> list() {
+        return snapshot;
+    }
+
+    @Override
+    public Path getLocalFile(ImageInfo info) {
+        return Paths.get(info.getPath());
+    }
+
+    @Override
+    public String describe() {
+        return "Ievietojiet attēlus mapē: " + folder.getFolder();
+    }
+
+    @Override
+    public void stop() {
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    private void scan() {
+        images.clear();
+        scanned = true;
+        if (folder.exists()) {
+            lastModified = folder.lastModified();
+            for (ImageInfo info : folder.scan()) {
+                images.put(info.getFileName(), info);
+            }
+            status.accept("Ielādēti " + images.size() + " lokālie attēli (" + id + ")");
+        }
+        publish();
+    }
+
+    /**
+     * Piemēro mapes sekotāja paziņotās izmaiņas tikai mainītajiem failiem.
+     *
+     * @param changed mainīto failu nosaukumi vai null, ja jāpārskata visa mape
+     */
+    private synchronized void onFilesChanged(Set<String> changed) {
+        if (changed == null || !scanned) {
+            scan();
+            return;
+        }
+        for (String name : changed) {
+            ImageInfo info = folder.stat(name);
+            if (info != null) {
+                images.put(name, info);
+            } else {
+                images.remove(name);
+            }
+        }
+        lastModified = folder.lastModified();
+        publish();
+    }
+
+    private void publish() {
+        snapshot = Collections.unmodifiableList(new ArrayList<>(images.values()));
+    }
+}
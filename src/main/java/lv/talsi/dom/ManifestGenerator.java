@@ -0,0 +1,101 @@
+package lv.talsi.dom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Izveido vai atjauno satura manifestu attēlu mapē.
+ *
+ * Palaišana pēc satura nomaiņas (piem., uz failu servera vai caur UNC ceļu):
+ * {@code java -cp info-ekrani.jar lv.talsi.dom.ManifestGenerator \\serveris\share\Display [manifest.properties]}.
+ * Nemainītiem failiem (tas pats izmērs un laiks) SHA-256 netiek pārrēķināts;
+ * paaudzes numurs tiek palielināts tikai tad, ja saturs mainījies.
+ */
+public class ManifestGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Lietošana: ManifestGenerator <attēlu mape> [manifesta fails]");
+            System.exit(2);
+        }
+        Path folder = Paths.get(args[0]);
+        String manifestName = args.length > 1 ? args[1] : "manifest.properties";
+        if (!Files.isDirectory(folder)) {
+            System.err.println("Mape neeksistē: " + folder);
+            System.exit(2);
+        }
+
+        ContentManifest manifest = generate(folder, manifestName);
+        log("Manifestā " + manifest.getEntries().size() + " attēli, paaudze " + manifest.getGeneration());
+    }
+
+    static ContentManifest generate(Path folder, String manifestName) throws IOException {
+        Path manifestFile = folder.resolve(manifestName);
+        ContentManifest previous = null;
+        if (Files.exists(manifestFile)) {
+            try (InputStream input = Files.newInputStream(manifestFile)) {
+                previous = ContentManifest.read(input);
+            } catch (IOException e) {
+                log("Iepriekšējais manifests bojāts, tiek veidots no jauna: " + e.getMessage());
+            }
+        }
+
+        Map<String, ContentManifest.Entry> known = new HashMap<>();
+        if (previous != null) {
+            for (ContentManifest.Entry entry : previous.getEntries()) {
+                known.put(entry.getFileName(), entry);
+            }
+        }
+
+        List<ContentManifest.Entry> entries = new ArrayList<>();
+        boolean changed = previous == null;
+        File[] files = folder.toFile().listFiles((dir, name) -> ImageInfo.isImageFile(name));
+        if (files != null) {
+            for (File file : files) {
+                long lastModified = file.lastModified() / 1000;
+                long size = file.length();
+                ContentManifest.Entry old = known.remove(file.getName());
+                if (old != null && old.getLastModified() == lastModified && old.getFileSize() == size) {
+                    entries.add(old);
+                    continue;
+                }
+                entries.add(new ContentManifest.Entry(file.getName(), lastModified, size,
+                        ContentManifest.sha256(file.toPath())));
+                changed = true;
+            }
+        }
+        changed |= !known.isEmpty();
+
+        if (!changed) {
+            log("Saturs nav mainījies");
+            return previous;
+        }
+
+        long generation = previous != null ? previous.getGeneration() + 1 : 1;
+        ContentManifest manifest = new ContentManifest(generation, System.currentTimeMillis() / 1000, entries);
+
+        // Ekrāni nekad neredz pusierakstītu manifestu
+        Path temp = folder.resolve(manifestName + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temp)) {
+            manifest.write(output);
+        }
+        Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return manifest;
+    }
+
+    private static void log(String message) {
+        System.out.println("[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "] Manifests: " + message);
+    }
+}
@@ -0,0 +1,68 @@
+package lv.talsi.dom;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Neliels HTTP serveris, kas atdod {@code /metrics} Prometheus teksta formātā.
+ */
+class MetricsHttpServer {
+
+    private final DisplayMetrics metrics;
+    private HttpServer server;
+
+    public MetricsHttpServer(DisplayMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean start(String host, int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            server.createContext("/metrics", this::handle);
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+            log("Rādītāji pieejami: http://" + host + ":" + port + "/metrics");
+            return true;
+        } catch (IOException e) {
+            log("Neizdevās palaist rādītāju serveri: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.getPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private void log(String message) {
+        AsyncLog.log("Rādītāji", message);
+    }
+}
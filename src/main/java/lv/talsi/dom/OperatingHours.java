@@ -0,0 +1,115 @@
+package lv.talsi.dom;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ekrāna darba laiks: stundas ({@code 07:00-20:00}, var būt arī pāri pusnaktij,
+ * piem. {@code 18:00-02:00}) un nedēļas dienas ({@code 1-5} vai {@code 1,2,3},
+ * 1 = pirmdiena). Nakts periods pieder dienai, kurā tas sākās.
+ */
+class OperatingHours {
+
+    static final OperatingHours ALWAYS = new OperatingHours(null, null, EnumSet.allOf(DayOfWeek.class));
+
+    private final LocalTime open;
+    private final LocalTime close;
+    private final Set<DayOfWeek> days;
+    private final List<LocalTime> boundaries = new ArrayList<>();
+
+    private OperatingHours(LocalTime open, LocalTime close, Set<DayOfWeek> days) {
+        this.open = open;
+        this.close = close;
+        this.days = days;
+        if (open == null) {
+            boundaries.add(LocalTime.MIDNIGHT);
+        } else {
+            boundaries.add(open.isBefore(close) ? open : close);
+            boundaries.add(open.isBefore(close) ? close : open);
+        }
+    }
+
+    /**
+     * @param hours {@code HH:mm-HH:mm} vai tukšs (visa diena)
+     * @param days  dienu saraksts vai tukšs (visas dienas)
+     * @throws IllegalArgumentException vai {@link java.time.DateTimeException}, ja formāts nav saprotams
+     */
+    static OperatingHours parse(String hours, String days) {
+        hours = hours.trim();
+        days = days.trim();
+        if (hours.isEmpty() && days.isEmpty()) {
+            return ALWAYS;
+        }
+
+        LocalTime open = null;
+        LocalTime close = null;
+        if (!hours.isEmpty()) {
+            String[] parts = hours.split("-");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("gaidīts HH:mm-HH:mm: " + hours);
+            }
+            open = LocalTime.parse(parts[0].trim());
+            close = LocalTime.parse(parts[1].trim());
+            if (open.equals(close)) {
+                open = null;
+                close = null;
+            }
+        }
+
+        Set<DayOfWeek> daySet = EnumSet.noneOf(DayOfWeek.class);
+        if (days.isEmpty()) {
+            daySet.addAll(EnumSet.allOf(DayOfWeek.class));
+        } else {
+            for (String part : days.split(",")) {
+                String[] range = part.trim().split("-");
+                int from = Integer.parseInt(range[0].trim());
+                int to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+                for (int day = from; day <= to; day++) {
+                    daySet.add(DayOfWeek.of(day));
+                }
+            }
+        }
+        return new OperatingHours(open, close, daySet);
+    }
+
+    public boolean isAlways() {
+        return open == null && days.size() == DayOfWeek.values().length;
+    }
+
+    public boolean isOpen(LocalDateTime time) {
+        DayOfWeek today = time.getDayOfWeek();
+        if (open == null) {
+            return days.contains(today);
+        }
+        LocalTime t = time.toLocalTime();
+        if (open.isBefore(close)) {
+            return days.contains(today) && !t.isBefore(open) && t.isBefore(close);
+        }
+        // Pāri pusnaktij: vakars šodien vai rīts pēc vakardienas
+        return (days.contains(today) && !t.isBefore(open)) ||
+               (days.contains(today.minus(1)) && t.isBefore(close));
+    }
+
+    /**
+     * Nākamais brīdis pēc {@code now}, kad ekrāns jāieslēdz vai jāizslēdz, vai null, ja tāda nav.
+     */
+    public LocalDateTime nextChange(LocalDateTime now) {
+        boolean current = isOpen(now);
+        LocalDate date = now.toLocalDate();
+        for (int day = 0; day <= 8; day++) {
+            for (LocalTime time : boundaries) {
+                LocalDateTime candidate = date.plusDays(day).atTime(time);
+                if (candidate.isAfter(now) && isOpen(candidate) != current) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,38 @@
+package lv.talsi.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nemainīgs attēlu saraksta momentuzņēmums.
+ *
+ * Katalogs tiek veidots fona pavedienā un publicēts kā jauns objekts ar vienu
+ * atomāru nomaiņu, tāpēc JavaFX pavediens vienmēr redz pilnīgu, saskaņotu sarakstu.
+ */
+final class Playlist {
+
+    static final Playlist EMPTY = new Playlist(List.of());
+
+    private final List<ImageInfo> images;
+
+    public Playlist(List<ImageInfo> images) {
+        this.images = List.copyOf(images);
+    }
+
+    public List<ImageInfo> getImages() { return images; }
+    public ImageInfo get(int index) { return images.get(index); }
+    public int size() { return images.size(); }
+    public boolean isEmpty() { return images.isEmpty(); }
+
+    /**
+     * Jauns saraksts bez norādītā attēla.
+     */
+    public Playlist without(ImageInfo info) {
+        if (!images.contains(info)) {
+            return this;
+        }
+        List<ImageInfo> result = new ArrayList<>(images);
+        result.remove(info);
+        return new Playlist(result);
+    }
+}
@@ -0,0 +1,61 @@
+package lv.talsi.dom;
+
+/**
+ * Slaidrādes pozīcija publicētajā katalogā.
+ *
+ * Pārņemot jaunu katalogu, pozīcija tiek saglabāta: nākamais rādītais būs
+ * tas pats attēls (vai nākamais pēc nosaukuma, ja tas izdzēsts).
+ * Izmanto tikai viens pavediens (parasti JavaFX).
+ */
+class PlaylistCursor {
+
+    private Playlist playlist = Playlist.EMPTY;
+    private int index = 0;
+
+    /**
+     * @return true, ja katalogs mainījās
+     */
+    public boolean sync(Playlist current) {
+        if (current == playlist) {
+            return false;
+        }
+        ImageInfo next = playlist.isEmpty() ? null : playlist.get(index % playlist.size());
+        playlist = current;
+        index = CatalogDiff.positionOf(current.getImages(), next);
+        return true;
+    }
+
+    /**
+     * Attēls, kas jārāda tagad, vai null, ja katalogs tukšs.
+     */
+    public ImageInfo current() {
+        if (playlist.isEmpty()) {
+            return null;
+        }
+        if (index >= playlist.size()) {
+            index = 0;
+        }
+        return playlist.get(index);
+    }
+
+    public void advance() {
+        if (!playlist.isEmpty()) {
+            index = (index + 1) % playlist.size();
+        }
+    }
+
+    /**
+     * Pārvieto pozīciju uz norādīto attēlu (vai nākamo pēc nosaukuma).
+     */
+    public void moveTo(ImageInfo info) {
+        index = CatalogDiff.positionOf(playlist.getImages(), info);
+    }
+
+    public void reset() {
+        index = 0;
+    }
+
+    public Playlist getPlaylist() { return playlist; }
+    public int getIndex() { return index; }
+    public boolean isEmpty() { return playlist.isEmpty(); }
+}
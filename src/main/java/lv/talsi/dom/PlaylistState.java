@@ -0,0 +1,120 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Saglabātais slaidrādes stāvoklis: pēdējais katalogs, pēdējais rādītais
+ * attēls un ekrāna izmērs, kādā tas tika sagatavots. Pēc restartēšanas
+ * ekrāns ar to uzreiz turpina rādīt saturu, kamēr katalogs tiek atjaunots fonā.
+ *
+ * Formāts ir {@link Properties}: {@code shown}, {@code target.width},
+ * {@code target.height} un {@code image.<n>=avots;lastModified;fileSize;ceļš}, kur avots ir
+ * {@code VEIDS} vai {@code VEIDS:nosaukums}.
+ */
+class PlaylistState {
+
+    private static final String FILE_NAME = "playlist.properties";
+
+    private final List<ImageInfo> images;
+    private final int shown;
+    private final double targetWidth;
+    private final double targetHeight;
+
+    public PlaylistState(List<ImageInfo> images, int shown, double targetWidth, double targetHeight) {
+        this.images = images;
+        this.shown = shown;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    public List<ImageInfo> getImages() { return images; }
+    public double getTargetWidth() { return targetWidth; }
+    public double getTargetHeight() { return targetHeight; }
+
+    /**
+     * Pēdējais rādītais attēls vai null.
+     */
+    public ImageInfo getShown() {
+        return shown >= 0 && shown < images.size() ? images.get(shown) : null;
+    }
+
+    static Path file(Properties config) {
+        return Paths.get(config.getProperty("state.folder", "state")).resolve(FILE_NAME);
+    }
+
+    /**
+     * Papildu ekrāna stāvokļa fails ({@code playlist-<n>.properties}); galvenajam ekrānam {@link #file(Properties)}.
+     */
+    static Path file(Properties config, int display) {
+        return Paths.get(config.getProperty("state.folder", "state")).resolve("playlist-" + display + ".properties");
+    }
+
+    /**
+     * @return saglabātais stāvoklis vai null, ja tā nav vai tas ir bojāts
+     */
+    public static PlaylistState load(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+
+            List<ImageInfo> images = new ArrayList<>();
+            for (int i = 0; properties.containsKey("image." + i); i++) {
+                String[] parts = properties.getProperty("image." + i).split(";", 4);
+                if (parts.length < 4) {
+                    return null;
+                }
+                String path = parts[3];
+                // VEIDS vai VEIDS:avots, ja avots nav noklusējuma
+                String[] source = parts[0].split(":", 2);
+                ImageInfo.Source kind = ImageInfo.Source.valueOf(source[0]);
+                images.add(new ImageInfo(
+                        path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1),
+                        kind,
+                        source.length > 1 ? source[1] : kind.name(),
+                        path,
+                        Long.parseLong(parts[1]),
+                        Long.parseLong(parts[2])));
+            }
+            return new PlaylistState(images,
+                    Integer.parseInt(properties.getProperty("shown", "-1")),
+                    Double.parseDouble(properties.getProperty("target.width", "0")),
+                    Double.parseDouble(properties.getProperty("target.height", "0")));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("shown", Integer.toString(shown));
+        properties.setProperty("target.width", Double.toString(targetWidth));
+        properties.setProperty("target.height", Double.toString(targetHeight));
+        for (int i = 0; i < images.size(); i++) {
+            ImageInfo info = images.get(i);
+            String source = info.getSourceId().equals(info.getSource().name())
+                    ? info.getSource().name() : info.getSource() + ":" + info.getSourceId();
+            properties.setProperty("image." + i,
+                    source + ";" + info.getLastModified() + ";" + info.getFileSize() + ";" + info.getPath());
+        }
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temp)) {
+            properties.store(output, "Info ekrāna slaidrādes stāvoklis");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
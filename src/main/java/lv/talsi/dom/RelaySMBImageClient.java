@@ -0,0 +1,189 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * SMB klients, kas saturu vispirms ņem no cita ekrāna releja
+ * ({@link ContentRelayServer}) un tikai tad, ja relejs nav pieejams, no SMB servera.
+ *
+ * Ceļi un laiki releja katalogā ir tie paši, kas SMB, tāpēc lokālais spogulis
+ * nelejupielādē failus no jauna, pārslēdzoties starp releju un SMB.
+ */
+class RelaySMBImageClient extends SMBImageClient {
+
+    private final URI relay;
+    private final Duration timeout;
+    private final HttpClient http;
+
+    // Tikai failu pārbaudes pavedienā
+    private String catalogETag;
+    private List<SMBImageInfo> catalog;
+    private volatile boolean relayAvailable;
+
+    public RelaySMBImageClient(Properties config, String relayUrl) {
+        super(config);
+        this.relay = URI.create(relayUrl.endsWith("/") ? relayUrl.substring(0, relayUrl.length() - 1) : relayUrl);
+        this.timeout = Duration.ofSeconds(Long.parseLong(config.getProperty("relay.timeout.sec", "5")));
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    public boolean connect() {
+        if (checkRelay()) {
+            return true;
+        }
+        return super.connect();
+    }
+
+    @Override
+    public boolean probe() {
+        return checkRelay() || super.probe();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return relayAvailable || super.isConnected();
+    }
+
+    @Override
+    public List<SMBImageInfo> listImages() {
+        List<SMBImageInfo> images = fetchCatalog();
+        if (images != null) {
+            return images;
+        }
+        if (!super.isConnected() && !super.connect()) {
+            return null;
+        }
+        return super.listImages();
+    }
+
+    @Override
+    protected boolean downloadTo(String remotePath, long knownSize, Path target) {
+        if (relayAvailable && downloadFromRelay(remotePath, knownSize, target)) {
+            return true;
+        }
+        // Relejam vēl nav šī faila - ņemt no SMB (kamēr relejs atbild, SMB savienojuma nav)
+        if (!super.isConnected() && !super.connect()) {
+            return false;
+        }
+        return super.downloadTo(remotePath, knownSize, target);
+    }
+
+    private boolean checkRelay() {
+        fetchCatalog();
+        return relayAvailable;
+    }
+
+    /**
+     * Releja katalogs vai null, ja relejs nav pieejams. Nemainītu katalogu
+     * relejs neatsūta (ETag).
+     */
+    private List<SMBImageInfo> fetchCatalog() {
+        HttpRequest.Builder request = HttpRequest.newBuilder(relay.resolve(ContentRelayServer.CATALOG_PATH))
+                .timeout(timeout)
+                .GET();
+        if (catalogETag != null && catalog != null) {
+            request.header("If-None-Match", catalogETag);
+        }
+
+        long start = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = http.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() == 304) {
+                    markRelay(true);
+                    return catalog;
+                }
+                if (response.statusCode() != 200) {
+                    throw new IOException("HTTP " + response.statusCode());
+                }
+
+                List<SMBImageInfo> images = new ArrayList<>();
+                int rejected = 0;
+                for (ContentManifest.Entry entry : ContentManifest.read(body).getEntries()) {
+                    String remotePath = entry.getFileName();
+                    String fileName = remotePath.substring(remotePath.lastIndexOf('/') + 1);
+                    // Nosaukums nonāk spoguļa mapes ceļā - cits ekrāns nedrīkst rakstīt ārpus tās
+                    if (!ImageInfo.isImageFile(fileName) || !ImageInfo.isSafeFileName(fileName)) {
+                        rejected++;
+                        continue;
+                    }
+                    // Vecāka versija relejs hash nesūta - tad pārbauda tikai izmēru
+                    String hash = entry.getHash().isEmpty() ? null : entry.getHash();
+                    images.add(new SMBImageInfo(fileName, remotePath, entry.getLastModified(), entry.getFileSize(), hash));
+                }
+                if (rejected > 0) {
+                    log("Releja katalogā izlaisti " + rejected + " nederīgi nosaukumi");
+                }
+                catalog = images;
+                catalogETag = response.headers().firstValue("ETag").orElse(null);
+                DisplayMetrics.get().recordSmbList(System.nanoTime() - start);
+                markRelay(true);
+                return images;
+            }
+        } catch (IOException e) {
+            markRelay(false);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private boolean downloadFromRelay(String remotePath, long knownSize, Path target) {
+        long start = System.nanoTime();
+        try {
+            URI uri = new URI(relay.getScheme(), null, relay.getHost(), relay.getPort(),
+                    ContentRelayServer.IMAGES_PATH + remotePath, null, null);
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+            HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    return false;
+                }
+                long bytes = Files.copy(body, target, StandardCopyOption.REPLACE_EXISTING);
+                if (knownSize >= 0 && bytes != knownSize) {
+                    // Releja fails nav tas, kas katalogā (mainījās vai pārtraukts) - ņemt no SMB
+                    log("Releja fails neatbilst katalogam: " + remotePath + " (" + bytes + " no " + knownSize + " B)");
+                    Files.deleteIfExists(target);
+                    return false;
+                }
+                DisplayMetrics.get().recordSmbDownload(System.nanoTime() - start, bytes);
+                return true;
+            }
+        } catch (IOException | URISyntaxException e) {
+            log("Kļūda lejupielādējot no releja: " + remotePath + " - " + e.getMessage());
+            markRelay(false);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void markRelay(boolean available) {
+        if (available != relayAvailable) {
+            log(available ? "Relejs pieejams: " + relay : "Relejs nav pieejams: " + relay);
+        }
+        relayAvailable = available;
+    }
+
+    private void log(String message) {
+        AsyncLog.log("Relejs", message);
+    }
+}
@@ -0,0 +1,353 @@
+package lv.talsi.dom;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Ekrāna izmērā sagatavotu slaidu kešatmiņa uz diska.
+ *
+ * Katrs slaids tiek saglabāts vienreiz kā premultiplicēti BGRA pikseļi
+ * atsevišķā failā; atslēga ir attēla identitāte ({@link ImageInfo#getLocation()},
+ * lastModified, izmērs) un mērķa izšķirtspēja. Nolasot fails tiek kartēts
+ * atmiņā un parādīts caur {@link PixelBuffer} bez dekodēšanas, tāpēc pikseļi
+ * atrodas OS lapu kešatmiņā, nevis Java heap.
+ *
+ * Faila formāts: 16 baitu galvene (MAGIC, versija, platums, augstums),
+ * tad platums * augstums * 4 baiti. Diska apjoms tiek ierobežots, izmetot
+ * sen neizmantotos failus.
+ */
+class RenderCache {
+
+    private static final int MAGIC = 0x49454247; // "IEBG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final String SUFFIX = ".bgra";
+    // Rindu skaits, ko kopē vienā rakstīšanas solī
+    private static final int STRIPE_ROWS = 64;
+    // Izmantošanas laiks tiek ierakstīts failā ne biežāk kā reizi šajā laikā (secība atmiņā ir precīza)
+    private static final long TOUCH_INTERVAL_MILLIS = 60 * 60 * 1000;
+
+    private final Path folder;
+    private final long maxBytes;
+    // Faili pēc pēdējās izmantošanas (vecākie pirmie)
+    private final LinkedHashMap<String, Entry> files = new LinkedHashMap<>(16, 0.75f, true);
+    // Izmestie faili, kurus vēl nevarēja izdzēst (Windows - vēl kartēti); tie joprojām aizņem vietu
+    private final Map<String, Long> pendingDeletes = new LinkedHashMap<>();
+    private long currentBytes;
+
+    private long hits;
+    private long misses;
+
+    public RenderCache(Properties config) {
+        this.folder = Paths.get(config.getProperty("render.cache.folder", "render-cache"));
+        this.maxBytes = Long.parseLong(config.getProperty("render.cache.max.mb", "2048")) * 1024 * 1024;
+    }
+
+    /**
+     * Nolasa esošos failus (vecākos pirmos), lai kešatmiņa saglabātos starp restartiem.
+     */
+    public synchronized void load() {
+        files.clear();
+        pendingDeletes.clear();
+        currentBytes = 0;
+        try {
+            Files.createDirectories(folder);
+        } catch (IOException e) {
+            log("Nevar izveidot mapi: " + folder + " - " + e.getMessage());
+            return;
+        }
+
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().endsWith(SUFFIX)) {
+                    found.add(file);
+                } else {
+                    // Pamesti pagaidu faili
+                    Files.deleteIfExists(file);
+                }
+            }
+            found.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+            for (Path file : found) {
+                long size = Files.size(file);
+                files.put(file.getFileName().toString(), new Entry(size, lastModified(file).toMillis()));
+                currentBytes += size;
+            }
+        } catch (IOException e) {
+            log("Kļūda nolasot mapi: " + e.getMessage());
+        }
+        evict();
+        log(files.size() + " sagatavoti slaidi, " + (currentBytes / (1024 * 1024)) + " MB");
+    }
+
+    /**
+     * Sagatavotais slaids vai null, ja tā vēl nav.
+     */
+    public Image get(ImageInfo info, double targetWidth, double targetHeight) {
+        String name = fileName(info, targetWidth, targetHeight);
+        long now = System.currentTimeMillis();
+        boolean touch;
+        synchronized (this) {
+            Entry entry = files.get(name);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            touch = now - entry.touched > TOUCH_INTERVAL_MILLIS;
+            if (touch) {
+                entry.touched = now;
+            }
+        }
+
+        Path file = folder.resolve(name);
+        try {
+            Image image = map(file);
+            if (touch) {
+                // Aptuvenais izmantošanas laiks saglabājas arī pēc restartēšanas
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+            return image;
+        } catch (IOException e) {
+            log("Bojāts sagatavotais slaids: " + name + " - " + e.getMessage());
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Saglabā dekodētu slaidu un atgriež tā kartēto versiju (vai oriģinālu,
+     * ja saglabāt neizdevās).
+     */
+    public Image put(ImageInfo info, double targetWidth, double targetHeight, Image image) {
+        PixelReader reader = image.getPixelReader();
+        if (reader == null) {
+            return image;
+        }
+
+        String name = fileName(info, targetWidth, targetHeight);
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        long size = HEADER_SIZE + (long) width * height * BYTES_PER_PIXEL;
+        if (size > maxBytes) {
+            return image;
+        }
+
+        Path file = folder.resolve(name);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(folder, name, ".tmp");
+            write(temp, reader, width, height);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+
+            synchronized (this) {
+                Entry previous = files.put(name, new Entry(size, System.currentTimeMillis()));
+                if (previous != null) {
+                    currentBytes -= previous.size;
+                }
+                // Fails aizstāts - iepriekšējā dzēšana vairs nav vajadzīga
+                Long pending = pendingDeletes.remove(name);
+                if (pending != null) {
+                    currentBytes -= pending;
+                }
+                currentBytes += size;
+                evict();
+            }
+            return map(file);
+        } catch (IOException | RuntimeException e) {
+            log("Neizdevās saglabāt slaidu: " + info.getFileName() + " - " + e.getMessage());
+            return image;
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Tiks izdzēsts nākamajā startā
+                }
+            }
+        }
+    }
+
+    private static void write(Path file, PixelReader reader, int width, int height) throws IOException {
+        int rowBytes = width * BYTES_PER_PIXEL;
+        int stripeRows = Math.max(1, Math.min(STRIPE_ROWS, height));
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(HEADER_SIZE, rowBytes * stripeRows));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.order(ByteOrder.BIG_ENDIAN).putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).flip();
+            writeFully(channel, buffer);
+
+            for (int y = 0; y < height; y += stripeRows) {
+                int rows = Math.min(stripeRows, height - y);
+                buffer.clear();
+                reader.getPixels(0, y, width, rows, PixelFormat.getByteBgraPreInstance(), buffer, rowBytes);
+                buffer.position(0).limit(rows * rowBytes);
+                writeFully(channel, buffer);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Kartē failu atmiņā tikai lasīšanai.
+     */
+    private static Image map(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        mapped.order(ByteOrder.BIG_ENDIAN);
+        if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new IOException("nezināms formāts");
+        }
+        int width = mapped.getInt(8);
+        int height = mapped.getInt(12);
+        if (width <= 0 || height <= 0 ||
+            mapped.capacity() != HEADER_SIZE + (long) width * height * BYTES_PER_PIXEL) {
+            throw new IOException("nepareizs izmērs");
+        }
+
+        ByteBuffer pixels = mapped.position(HEADER_SIZE).slice();
+        PixelBuffer<ByteBuffer> pixelBuffer = new PixelBuffer<>(width, height, pixels, PixelFormat.getByteBgraPreInstance());
+        return new MappedImage(pixelBuffer);
+    }
+
+    /**
+     * Slaids, kura pikseļi ir kartētā failā ārpus Java heap.
+     */
+    static final class MappedImage extends WritableImage {
+        private MappedImage(PixelBuffer<ByteBuffer> pixels) {
+            super(pixels);
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        // Pēdējais failā ierakstītais izmantošanas laiks
+        long touched;
+
+        Entry(long size, long touched) {
+            this.size = size;
+            this.touched = touched;
+        }
+    }
+
+    private synchronized void remove(String name) {
+        Entry entry = files.remove(name);
+        if (entry != null) {
+            discard(name, entry.size);
+        }
+    }
+
+    private void evict() {
+        retryDeletes();
+        Iterator<Map.Entry<String, Entry>> it = files.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            it.remove();
+            discard(eldest.getKey(), eldest.getValue().size);
+        }
+    }
+
+    /**
+     * Dzēš failu; ja tas vēl ir kartēts, tas paliek uzskaitē un tiek mēģināts dzēst vēlāk.
+     */
+    private void discard(String name, long size) {
+        if (delete(folder.resolve(name))) {
+            currentBytes -= size;
+        } else {
+            pendingDeletes.put(name, size);
+        }
+    }
+
+    private void retryDeletes() {
+        Iterator<Map.Entry<String, Long>> it = pendingDeletes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> pending = it.next();
+            if (delete(folder.resolve(pending.getKey()))) {
+                currentBytes -= pending.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    private boolean delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            // Windows neļauj dzēst vēl kartētu failu
+            return false;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Faila nosaukums no attēla identitātes un mērķa izšķirtspējas.
+     */
+    static String fileName(ImageInfo info, double targetWidth, double targetHeight) {
+        String key = info.getLocation() + "|" + info.getLastModified() + "|" + info.getFileSize() +
+                     "|" + (int) targetWidth + "x" + (int) targetHeight;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized int size() { return files.size(); }
+    public synchronized int getPendingDeletes() { return pendingDeletes.size(); }
+    public synchronized long getCurrentBytes() { return currentBytes; }
+    public long getMaxBytes() { return maxBytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    private void log(String message) {
+        AsyncLog.log("Sagatavotie slaidi", message);
+    }
+}
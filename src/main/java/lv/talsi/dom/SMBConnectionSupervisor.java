@@ -0,0 +1,269 @@
+package lv.talsi.dom;
+
+import com.hierynomus.mssmb2.messages.SMB2Echo;
+import com.hierynomus.smbj.SMBClient;
+import com.hierynomus.smbj.SmbConfig;
+import com.hierynomus.smbj.auth.AuthenticationContext;
+import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.DiskShare;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Uztur vienu SMB savienojumu (SMBClient/Connection/Session/DiskShare).
+ *
+ * Visiem tīkla soļiem ir ierobežoti taimauti, tāpēc pusdzīvs serveris
+ * nevar uz visiem laikiem bloķēt pavedienu. Pēc neveiksmes nākamais
+ * mēģinājums notiek ar eksponenciāli augošu pauzi (ar nejaušu nobīdi);
+ * šajā laikā un kamēr cits pavediens jau savienojas, izsaucēji uzreiz
+ * saņem "nav pieejams", nevis gaida. Vecais savienojums vienmēr tiek
+ * aizvērts pirms jauna izveides.
+ */
+class SMBConnectionSupervisor {
+
+    public enum State { DISCONNECTED, CONNECTING, CONNECTED, BACKOFF }
+
+    private final String server;
+    private final String share;
+    private final String username;
+    private final String password;
+    private final String domain;
+
+    private final SmbConfig smbConfig;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long probeTimeoutMillis;
+    private final int readBufferSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Random random = new Random();
+    private final AtomicInteger reconnectCount = new AtomicInteger();
+    private final AtomicInteger failureCount = new AtomicInteger();
+
+    private SMBClient client;
+    private volatile Connection connection;
+    private Session session;
+    private volatile DiskShare diskShare;
+
+    private volatile State state = State.DISCONNECTED;
+    private volatile long nextAttemptMillis;
+    private int consecutiveFailures;
+    private boolean everConnected;
+
+    public SMBConnectionSupervisor(Properties config) {
+        this.server = config.getProperty("smb.server", "172.16.10.44");
+        this.share = config.getProperty("smb.share", "ZShare");
+        this.username = config.getProperty("smb.username", "");
+        this.password = config.getProperty("smb.password", "");
+        this.domain = config.getProperty("smb.domain", "");
+
+        long socketTimeout = Long.parseLong(config.getProperty("smb.socket.timeout.sec", "10"));
+        long readTimeout = Long.parseLong(config.getProperty("smb.read.timeout.sec", "30"));
+        long transactTimeout = Long.parseLong(config.getProperty("smb.transact.timeout.sec", "30"));
+        this.readBufferSize = Integer.parseInt(config.getProperty("smb.read.buffer.kb", "1024")) * 1024;
+
+        this.smbConfig = SmbConfig.builder()
+                .withSoTimeout(socketTimeout, TimeUnit.SECONDS)
+                .withTimeout(transactTimeout, TimeUnit.SECONDS)
+                .withReadTimeout(readTimeout, TimeUnit.SECONDS)
+                .withTransactTimeout(transactTimeout, TimeUnit.SECONDS)
+                .withReadBufferSize(readBufferSize)
+                .build();
+
+        this.minBackoffMillis = Long.parseLong(config.getProperty("smb.reconnect.min.sec", "5")) * 1000;
+        this.maxBackoffMillis = Long.parseLong(config.getProperty("smb.reconnect.max.sec", "300")) * 1000;
+        this.probeTimeoutMillis = Long.parseLong(config.getProperty("smb.probe.timeout.sec", "5")) * 1000;
+    }
+
+    /**
+     * Dzīvs share vai null, ja savienojuma nav. Nekad nebloķē.
+     */
+    public DiskShare getShare() {
+        return isConnected() ? diskShare : null;
+    }
+
+    public boolean isConnected() {
+        Connection current = connection;
+        return state == State.CONNECTED && current != null && current.isConnected() && diskShare != null;
+    }
+
+    /**
+     * Savienojas, ja vajag un ja atļauj pauze starp mēģinājumiem.
+     *
+     * @return false uzreiz, ja pašlaik ir pauze vai cits pavediens jau savienojas
+     */
+    public boolean ensureConnected() {
+        if (isConnected()) {
+            return true;
+        }
+        if (System.currentTimeMillis() < nextAttemptMillis) {
+            return false;
+        }
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            return isConnected() || connect();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean connect() {
+        state = State.CONNECTING;
+        closeQuietly();
+
+        try {
+            client = new SMBClient(smbConfig);
+            Connection newConnection = client.connect(server);
+
+            AuthenticationContext auth = username.isEmpty()
+                    ? AuthenticationContext.anonymous()
+                    : new AuthenticationContext(username, password.toCharArray(), domain);
+
+            session = newConnection.authenticate(auth);
+            diskShare = (DiskShare) session.connectShare(share);
+            connection = newConnection;
+
+            if (everConnected) {
+                reconnectCount.incrementAndGet();
+            }
+            everConnected = true;
+            consecutiveFailures = 0;
+            nextAttemptMillis = 0;
+            state = State.CONNECTED;
+
+            log("Savienojums ar SMB serveri izveidots: " + server);
+            return true;
+
+        } catch (Exception e) {
+            log("Kļūda savienojumā ar SMB serveri: " + e.getMessage());
+            closeQuietly();
+            scheduleRetry();
+            return false;
+        }
+    }
+
+    /**
+     * Pārbauda savienojumu ar SMB ECHO pieprasījumu (uztur to arī dzīvu).
+     */
+    public boolean probe() {
+        Connection current = connection;
+        if (!isConnected() || current == null) {
+            return false;
+        }
+        try {
+            current.send(new SMB2Echo(current.getNegotiatedProtocol().getDialect()))
+                   .get(probeTimeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            markFailed(e);
+            return false;
+        }
+    }
+
+    /**
+     * Paziņo, ka savienojums nedarbojas: tas tiek aizvērts un sākas pauze.
+     */
+    public void markFailed(Exception cause) {
+        if (!lock.tryLock()) {
+            // Cits pavediens jau savienojas no jauna
+            return;
+        }
+        try {
+            if (state != State.CONNECTED) {
+                return;
+            }
+            log("SMB savienojums pārtrūka: " + cause.getMessage());
+            closeQuietly();
+            scheduleRetry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleRetry() {
+        failureCount.incrementAndGet();
+        consecutiveFailures++;
+
+        long delay = minBackoffMillis << Math.min(consecutiveFailures - 1, 20);
+        delay = Math.min(delay, maxBackoffMillis);
+        // Nejauša nobīde ±20%, lai visi ekrāni nemēģinātu vienlaicīgi
+        delay = (long) (delay * (0.8 + 0.4 * random.nextDouble()));
+
+        nextAttemptMillis = System.currentTimeMillis() + delay;
+        state = State.BACKOFF;
+        log("Nākamais savienojuma mēģinājums pēc " + (delay / 1000) + " s");
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closeQuietly();
+            state = State.DISCONNECTED;
+            log("SMB savienojums aizvērts");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeQuietly() {
+        DiskShare oldShare = diskShare;
+        Connection oldConnection = connection;
+        diskShare = null;
+        connection = null;
+
+        try {
+            if (oldShare != null) oldShare.close();
+        } catch (Exception ignored) {
+            // Savienojums jau var būt pārtraukts
+        }
+        try {
+            if (session != null) session.close();
+        } catch (Exception ignored) {
+            // Savienojums jau var būt pārtraukts
+        }
+        try {
+            if (oldConnection != null) oldConnection.close(true);
+        } catch (Exception ignored) {
+            // Savienojums jau var būt pārtraukts
+        }
+        if (client != null) {
+            client.close();
+        }
+        session = null;
+        client = null;
+    }
+
+    /**
+     * Lielākais viena READ pieprasījuma izmērs: konfigurētais, bet ne lielāks
+     * par servera atļauto.
+     */
+    public int getReadChunkSize() {
+        Connection current = connection;
+        if (current == null || current.getNegotiatedProtocol() == null) {
+            return Math.min(readBufferSize, 64 * 1024);
+        }
+        return Math.max(64 * 1024, Math.min(readBufferSize, current.getNegotiatedProtocol().getMaxReadSize()));
+    }
+
+    public State getState() { return state; }
+    public int getReconnectCount() { return reconnectCount.get(); }
+    public int getFailureCount() { return failureCount.get(); }
+
+    /**
+     * Sekundes līdz nākamajam atļautajam savienojuma mēģinājumam.
+     */
+    public long getSecondsUntilRetry() {
+        return Math.max(0, (nextAttemptMillis - System.currentTimeMillis()) / 1000);
+    }
+
+    private void log(String message) {
+        AsyncLog.log("SMB", message);
+    }
+}
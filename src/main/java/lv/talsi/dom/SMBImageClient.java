@@ -1,126 +1,280 @@
 package lv.talsi.dom;
 
 import com.hierynomus.msdtyp.AccessMask;
+import com.hierynomus.mserref.NtStatus;
+import com.hierynomus.msfscc.fileinformation.FileAllInformation;
+import com.hierynomus.msfscc.fileinformation.FileBasicInformation;
 import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
 import com.hierynomus.mssmb2.SMB2CreateDisposition;
 import com.hierynomus.mssmb2.SMB2ShareAccess;
-import com.hierynomus.smbj.SMBClient;
-import com.hierynomus.smbj.auth.AuthenticationContext;
-import com.hierynomus.smbj.connection.Connection;
-import com.hierynomus.smbj.session.Session;
+import com.hierynomus.mssmb2.SMBApiException;
 import com.hierynomus.smbj.share.DiskShare;
 import com.hierynomus.smbj.share.File;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class SMBImageClient {
 
-    private final String server;
-    private final String share;
-    private final String folder;
-    private final String username;
-    private final String password;
-    private final String domain;
+    // Faili līdz šim izmēram tiek nolasīti vienā iepriekš piešķirtā buferī
+    private static final long MAX_BUFFERED_FILE_SIZE = 64L * 1024 * 1024;
+    private static final long MAX_MANIFEST_SIZE = 4L * 1024 * 1024;
+    // Mapes izmaiņas, kas jaunākas par manifestu vairāk par šo, nozīmē novecojušu manifestu
+    private static final long MANIFEST_STALE_TOLERANCE_MILLIS = 2000;
 
-    private SMBClient client;
-    private Connection connection;
-    private Session session;
-    private DiskShare diskShare;
+    private final String folder;
+    private final int downloadParallelism;
+    private final SMBConnectionSupervisor supervisor;
+    // Atvērtie SMB failu rokturi (noplūžu uzskaitei)
+    private final AtomicInteger openHandles = new AtomicInteger();
+
+    private final String manifestName;
+    private final long manifestVerifyMillis;
+    // Pēdējais nolasītais manifests (tikai failu pārbaudes pavedienā)
+    private ContentManifest manifest;
+    private long manifestWriteTime;
+    private long manifestSize;
+    // Manifests ar mazāku paaudzi - kļūst par pamatu pēc veiksmīgas pilnas pārbaudes
+    private ContentManifest pendingManifest;
+    private long pendingWriteTime;
+    private long pendingSize;
+    private long lastFullListing;
+    private boolean fullListingRequested;
 
     public SMBImageClient(Properties config) {
-        this.server = config.getProperty("smb.server", "172.16.10.44");
-        this.share = config.getProperty("smb.share", "ZShare");
         this.folder = config.getProperty("smb.folder", "Display");
-        this.username = config.getProperty("smb.username", "");
-        this.password = config.getProperty("smb.password", "");
-        this.domain = config.getProperty("smb.domain", "");
+        this.downloadParallelism = Integer.parseInt(config.getProperty("smb.download.parallelism", "4"));
+        this.supervisor = new SMBConnectionSupervisor(config);
+        this.manifestName = config.getProperty("smb.manifest.file", "manifest.properties").trim();
+        this.manifestVerifyMillis = Long.parseLong(config.getProperty("smb.manifest.verify.minutes", "60")) * 60_000;
     }
 
+    /**
+     * Savienojas ar serveri, ja savienojuma vēl nav. Pēc neveiksmes atkārtoti
+     * mēģinājumi notiek tikai pēc pauzes - līdz tam atgriež false uzreiz.
+     */
     public boolean connect() {
-        try {
-            client = new SMBClient();
-            connection = client.connect(server);
-
-            AuthenticationContext auth = username.isEmpty()
-                    ? AuthenticationContext.anonymous()
-                    : new AuthenticationContext(username, password.toCharArray(), domain);
-
-            session = connection.authenticate(auth);
-            diskShare = (DiskShare) session.connectShare(share);
+        return supervisor.ensureConnected();
+    }
 
-            log("Savienojums ar SMB serveri izveidots: " + server);
-            return true;
+    /**
+     * Pārbauda, vai savienojums tiešām darbojas; ja nē, tas tiek aizvērts.
+     */
+    public boolean probe() {
+        return supervisor.probe();
+    }
 
-        } catch (Exception e) {
-            log("Kļūda savienojumā ar SMB serveri: " + e.getMessage());
-            return false;
-        }
+    public SMBConnectionSupervisor getSupervisor() {
+        return supervisor;
     }
 
+    /**
+     * Attēlu saraksts SMB mapē vai null, ja mapi nevarēja nolasīt
+     * (lai kļūdas gadījumā nepazaudētu lokālo kopiju).
+     *
+     * Ja mapē ir aktuāls satura manifests, tiek nolasīts tikai tas; pilns
+     * mapes saraksts tiek pieprasīts, ja manifesta nav, tas ir novecojis vai
+     * kopš pēdējās pilnās pārbaudes pagājis smb.manifest.verify.minutes.
+     */
     public List<SMBImageInfo> listImages() {
-        List<SMBImageInfo> images = new ArrayList<>();
-
+        DiskShare diskShare = supervisor.getShare();
         if (diskShare == null) {
             log("Nav savienojuma ar SMB serveri");
-            return images;
+            return null;
         }
 
-        try {
-            if (!diskShare.folderExists(folder)) {
-                log("SMB mape neeksistē: " + folder);
+        if (!manifestName.isEmpty() && !fullListingRequested &&
+            System.currentTimeMillis() - lastFullListing < manifestVerifyMillis) {
+            List<SMBImageInfo> images = listFromManifest(diskShare);
+            if (images != null) {
                 return images;
             }
+        }
+
+        List<SMBImageInfo> images = listFolder(diskShare);
+        if (images != null) {
+            lastFullListing = System.currentTimeMillis();
+            fullListingRequested = false;
+            if (pendingManifest != null) {
+                // Mape pārbaudīta - atjaunotais manifests turpmāk ir pamats
+                manifest = pendingManifest;
+                manifestWriteTime = pendingWriteTime;
+                manifestSize = pendingSize;
+                pendingManifest = null;
+            }
+        }
+        return images;
+    }
 
+    /**
+     * Nākamajā reizē nolasīt visu mapi (piem., ja lejupielādētais fails
+     * neatbilst manifestam).
+     */
+    public void requestFullListing() {
+        fullListingRequested = true;
+    }
+
+    /**
+     * Attēli no manifesta vai null, ja manifesta nav, tas ir novecojis vai bojāts.
+     */
+    private List<SMBImageInfo> listFromManifest(DiskShare diskShare) {
+        String manifestPath = folder + "/" + manifestName;
+        long start = System.nanoTime();
+        try {
+            // Divi nelieli metadatu pieprasījumi mapes saraksta vietā
+            FileAllInformation manifestInfo = diskShare.getFileInformation(manifestPath);
+            FileBasicInformation folderInfo = diskShare.getFileInformation(folder, FileBasicInformation.class);
+
+            long writeTime = manifestInfo.getBasicInformation().getLastWriteTime().toEpochMillis();
+            long size = manifestInfo.getStandardInformation().getEndOfFile();
+            if (folderInfo.getLastWriteTime().toEpochMillis() > writeTime + MANIFEST_STALE_TOLERANCE_MILLIS) {
+                log("Manifests novecojis (mape mainīta pēc tā izveides) - nolasa visu mapi");
+                return null;
+            }
+            if (size > MAX_MANIFEST_SIZE) {
+                log("Manifests pārāk liels: " + size + " B");
+                return null;
+            }
+
+            if (manifest == null || writeTime != manifestWriteTime || size != manifestSize) {
+                ContentManifest fresh;
+                try (OpenFile handle = openForRead(diskShare, manifestPath);
+                     InputStream input = handle.file.getInputStream()) {
+                    fresh = ContentManifest.read(input);
+                }
+                if (manifest != null && fresh.getGeneration() < manifest.getGeneration()) {
+                    log("Manifesta paaudze samazinājusies (" + manifest.getGeneration() + " -> " +
+                        fresh.getGeneration() + ") - nolasa visu mapi");
+                    pendingManifest = fresh;
+                    pendingWriteTime = writeTime;
+                    pendingSize = size;
+                    return null;
+                }
+                pendingManifest = null;
+                manifest = fresh;
+                manifestWriteTime = writeTime;
+                manifestSize = size;
+                log("Nolasīts manifests: paaudze " + fresh.getGeneration() + ", " + fresh.getEntries().size() + " attēli");
+                for (ContentManifest.Entry entry : fresh.getEntries()) {
+                    if (!ImageInfo.isSafeFileName(entry.getFileName())) {
+                        log("Manifestā nederīgs faila nosaukums, izlaists: " + entry.getFileName());
+                    }
+                }
+            }
+
+            List<SMBImageInfo> images = new ArrayList<>();
+            for (ContentManifest.Entry entry : manifest.getEntries()) {
+                // Nosaukums nonāk spoguļa mapes ceļā - ne ārpus tās
+                if (!ImageInfo.isImageFile(entry.getFileName()) || !ImageInfo.isSafeFileName(entry.getFileName())) {
+                    continue;
+                }
+                images.add(new SMBImageInfo(entry.getFileName(), folder + "/" + entry.getFileName(),
+                        entry.getLastModified(), entry.getFileSize(), entry.getHash()));
+            }
+            DisplayMetrics.get().recordSmbList(System.nanoTime() - start);
+            return images;
+
+        } catch (SMBApiException e) {
+            if (e.getStatus() != NtStatus.STATUS_OBJECT_NAME_NOT_FOUND &&
+                e.getStatus() != NtStatus.STATUS_OBJECT_PATH_NOT_FOUND) {
+                log("Kļūda nolasot manifestu: " + e.getMessage());
+            }
+            manifest = null;
+            pendingManifest = null;
+            return null;
+        } catch (IOException e) {
+            log("Bojāts manifests: " + e.getMessage());
+            manifest = null;
+            pendingManifest = null;
+            return null;
+        }
+    }
+
+    private List<SMBImageInfo> listFolder(DiskShare diskShare) {
+        List<SMBImageInfo> images = new ArrayList<>();
+
+        long start = System.nanoTime();
+        try {
+            // Viens list pieprasījums bez atsevišķas folderExists pārbaudes
             for (FileIdBothDirectoryInformation fileInfo : diskShare.list(folder)) {
                 String fileName = fileInfo.getFileName();
-                String lowerName = fileName.toLowerCase();
 
-                if (lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg") ||
-                    lowerName.endsWith(".png") || lowerName.endsWith(".gif") ||
-                    lowerName.endsWith(".bmp")) {
+                if (ImageInfo.isImageFile(fileName)) {
 
+                    // Pēdējās rakstīšanas laiks - tāds pats kā manifestā
                     images.add(new SMBImageInfo(
                             fileName,
                             folder + "/" + fileName,
-                            fileInfo.getChangeTime().toInstant().getEpochSecond(),
+                            fileInfo.getLastWriteTime().toInstant().getEpochSecond(),
                             fileInfo.getEndOfFile()
                     ));
                 }
             }
 
+            DisplayMetrics.get().recordSmbList(System.nanoTime() - start);
             log("Atrasti " + images.size() + " attēli SMB serverī");
 
+        } catch (SMBApiException e) {
+            if (e.getStatus() == NtStatus.STATUS_OBJECT_NAME_NOT_FOUND ||
+                e.getStatus() == NtStatus.STATUS_OBJECT_PATH_NOT_FOUND) {
+                log("SMB mape neeksistē: " + folder);
+            } else {
+                log("Kļūda nolasot SMB mapi: " + e.getMessage());
+            }
+            return null;
         } catch (Exception e) {
             log("Kļūda nolasot SMB mapi: " + e.getMessage());
+            supervisor.markFailed(e);
+            return null;
         }
 
         return images;
     }
 
+    /**
+     * Atver attēlu lasīšanai. Izsaucējam plūsma jāaizver - tad tiek aizvērts
+     * arī SMB fails.
+     */
     public InputStream downloadImage(String remotePath) {
+        DiskShare diskShare = supervisor.getShare();
         if (diskShare == null) {
             log("Nav savienojuma ar SMB serveri");
             return null;
         }
 
         try {
-            File file = diskShare.openFile(
-                    remotePath,
-                    EnumSet.of(AccessMask.FILE_READ_DATA),
-                    null,
-                    SMB2ShareAccess.ALL,
-                    SMB2CreateDisposition.FILE_OPEN,
-                    null
-            );
-
-            return file.getInputStream();
+            OpenFile handle = openForRead(diskShare, remotePath);
+            try {
+                return new FilterInputStream(handle.file.getInputStream()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            handle.close();
+                        }
+                    }
+                };
+            } catch (RuntimeException e) {
+                handle.close();
+                throw e;
+            }
 
         } catch (Exception e) {
             log("Kļūda lejupielādējot attēlu: " + remotePath + " - " + e.getMessage());
@@ -128,27 +282,225 @@ public class SMBImageClient {
         }
     }
 
-    public void disconnect() {
+    public boolean downloadTo(String remotePath, Path target) {
+        return downloadTo(remotePath, -1, target);
+    }
+
+    /**
+     * Lejupielādē vairākus attēlus paralēli (ne vairāk kā smb.download.parallelism
+     * vienlaicīgi).
+     *
+     * @param targetFor mērķa fails katram attēlam
+     * @return veiksmīgi lejupielādētie attēli
+     */
+    public List<SMBImageInfo> downloadAll(List<SMBImageInfo> images, Function<SMBImageInfo, Path> targetFor) {
+        if (images.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int threads = Math.max(1, Math.min(downloadParallelism, images.size()));
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "smb-download-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
         try {
-            if (diskShare != null) diskShare.close();
-            if (session != null) session.close();
-            if (connection != null) connection.close();
-            if (client != null) client.close();
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (SMBImageInfo image : images) {
+                results.add(executor.submit(() ->
+                        downloadTo(image.getRemotePath(), image.getFileSize(), targetFor.apply(image))));
+            }
+
+            List<SMBImageInfo> downloaded = new ArrayList<>();
+            for (int i = 0; i < images.size(); i++) {
+                try {
+                    if (results.get(i).get()) {
+                        downloaded.add(images.get(i));
+                    }
+                } catch (Exception e) {
+                    log("Kļūda lejupielādējot attēlu: " + images.get(i).getRemotePath() + " - " + e.getMessage());
+                }
+            }
+            return downloaded;
 
-            log("SMB savienojums aizvērts");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
+    /**
+     * Lejupielādē failu ar lieliem, serverim atļautiem READ pieprasījumiem.
+     * Ja izmērs zināms, fails tiek nolasīts vienā iepriekš piešķirtā buferī.
+     */
+    protected boolean downloadTo(String remotePath, long knownSize, Path target) {
+        int chunkSize = supervisor.getReadChunkSize();
+        long start = System.nanoTime();
+
+        try (OpenFile handle = new OpenFile(openRemote(remotePath))) {
+            RemoteFile file = handle.file;
+
+            if (knownSize >= 0 && knownSize <= MAX_BUFFERED_FILE_SIZE) {
+                byte[] data = new byte[(int) knownSize];
+                int total = 0;
+                while (total < data.length) {
+                    int read = file.read(data, total, total, Math.min(chunkSize, data.length - total));
+                    if (read <= 0) {
+                        break;
+                    }
+                    total += read;
+                }
+                if (total != data.length) {
+                    // Fails mainījās lejupielādes laikā - mēģināt nākamreiz
+                    log("Nepilnīgi lejupielādēts attēls: " + remotePath);
+                    return false;
+                }
+                Files.write(target, data);
+                DisplayMetrics.get().recordSmbDownload(System.nanoTime() - start, total);
+            } else {
+                byte[] buffer = new byte[chunkSize];
+                long offset = 0;
+                try (OutputStream output = Files.newOutputStream(target,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    int read;
+                    while ((read = file.read(buffer, offset, 0, buffer.length)) > 0) {
+                        output.write(buffer, 0, read);
+                        offset += read;
+                    }
+                }
+                DisplayMetrics.get().recordSmbDownload(System.nanoTime() - start, offset);
+            }
+            return true;
+
+        } catch (NotConnectedException e) {
+            log("Nav savienojuma ar SMB serveri");
+            return false;
+        } catch (SMBApiException | FileSystemException e) {
+            // Faila (nevis savienojuma) kļūda
+            log("Kļūda lejupielādējot attēlu: " + remotePath + " - " + e.getMessage());
+            return false;
         } catch (Exception e) {
-            log("Kļūda aizverot SMB savienojumu: " + e.getMessage());
+            log("Kļūda lejupielādējot attēlu: " + remotePath + " - " + e.getMessage());
+            supervisor.markFailed(e);
+            return false;
+        }
+    }
+
+    private OpenFile openForRead(DiskShare diskShare, String remotePath) {
+        return new OpenFile(openSMBFile(diskShare, remotePath));
+    }
+
+    private static RemoteFile openSMBFile(DiskShare diskShare, String remotePath) {
+        File file = diskShare.openFile(
+                remotePath,
+                EnumSet.of(AccessMask.FILE_READ_DATA),
+                null,
+                SMB2ShareAccess.ALL,
+                SMB2CreateDisposition.FILE_OPEN,
+                null);
+        return new RemoteFile() {
+            @Override
+            public int read(byte[] buffer, long fileOffset, int bufferOffset, int length) {
+                return file.read(buffer, fileOffset, bufferOffset, length);
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return file.getInputStream();
+            }
+
+            @Override
+            public void close() {
+                file.close();
+            }
+        };
+    }
+
+    /**
+     * Atver failu lejupielādei. Atvērto failu uzskaite un aizvēršana notiek
+     * izsaucējā, tāpēc aizstājējs (piem., {@link FolderSMBImageClient}) iet caur to pašu ceļu.
+     *
+     * @throws NotConnectedException ja nav savienojuma ar serveri
+     */
+    protected RemoteFile openRemote(String remotePath) throws IOException {
+        DiskShare diskShare = supervisor.getShare();
+        if (diskShare == null) {
+            throw new NotConnectedException();
         }
+        return openSMBFile(diskShare, remotePath);
+    }
+
+    /**
+     * Pašlaik atvērto SMB failu skaits; ilgstoši augošs skaits nozīmē noplūdi.
+     */
+    public int getOpenHandleCount() {
+        return openHandles.get();
+    }
+
+    private void handleOpened() {
+        openHandles.incrementAndGet();
+    }
+
+    private void handleClosed() {
+        openHandles.decrementAndGet();
+    }
+
+    public void disconnect() {
+        supervisor.close();
     }
 
     public boolean isConnected() {
-        return connection != null && connection.isConnected() &&
-               session != null && diskShare != null;
+        return supervisor.isConnected();
     }
 
     private void log(String message) {
-        System.out.println("[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "] SMB: " + message);
+        AsyncLog.log("SMB", message);
+    }
+
+    /**
+     * Atvērts attālais fails (SMB gadījumā smbj {@link File}).
+     */
+    protected interface RemoteFile extends AutoCloseable {
+
+        /**
+         * @return nolasīto baitu skaits; 0 vai mazāk faila beigās
+         */
+        int read(byte[] buffer, long fileOffset, int bufferOffset, int length) throws IOException;
+
+        InputStream getInputStream() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    protected static final class NotConnectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NotConnectedException() {
+            super("Nav savienojuma ar SMB serveri");
+        }
+    }
+
+    /**
+     * Atvērts fails, kas tiek uzskaitīts līdz aizvēršanai.
+     */
+    private final class OpenFile implements AutoCloseable {
+        private final RemoteFile file;
+
+        OpenFile(RemoteFile file) {
+            this.file = file;
+            handleOpened();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                file.close();
+            } finally {
+                handleClosed();
+            }
+        }
     }
 
     public static class SMBImageInfo {
@@ -156,17 +508,25 @@ public class SMBImageClient {
         private final String remotePath;
         private final long lastModified;
         private final long fileSize;
+        // SHA-256 no manifesta vai null, ja nav zināms
+        private final String hash;
 
         public SMBImageInfo(String fileName, String remotePath, long lastModified, long fileSize) {
+            this(fileName, remotePath, lastModified, fileSize, null);
+        }
+
+        public SMBImageInfo(String fileName, String remotePath, long lastModified, long fileSize, String hash) {
             this.fileName = fileName;
             this.remotePath = remotePath;
             this.lastModified = lastModified;
             this.fileSize = fileSize;
+            this.hash = hash;
         }
 
         public String getFileName() { return fileName; }
         public String getRemotePath() { return remotePath; }
         public long getLastModified() { return lastModified; }
         public long getFileSize() { return fileSize; }
+        public String getHash() { return hash; }
     }
 }
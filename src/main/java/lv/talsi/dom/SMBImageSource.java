@@ -0,0 +1,162 @@
+package lv.talsi.dom;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * SMB koplietojuma attēli, rādīti no lokālā spoguļa ({@link SMBMirror}).
+ *
+ * Savienošanās, veselības pārbaude un spoguļa saskaņošana notiek {@link #check()};
+ * saraksts un lokālie faili tiek publicēti kā nemainīgs momentuzņēmums, tāpēc
+ * ilga lejupielāde neaizkavē ne katalogu, ne attēlu ielādi.
+ */
+class SMBImageSource implements ImageSource {
+
+    private final String id;
+    private final SMBImageClient client;
+    private final SMBMirror mirror;
+    private final String description;
+    private final Consumer<String> status;
+
+    private boolean connectedBefore;
+    // Spoguļa momentuzņēmums (raksta tikai pārbaudes pavediens)
+    private volatile List<ImageInfo> snapshot = Collections.emptyList();
+    private volatile Map<String, Path> localFiles = Collections.emptyMap();
+    private volatile Map<ImageInfo, String> manifestHashes = Collections.emptyMap();
+
+    /**
+     * @param config avota iestatījumi ({@code smb.server}, {@code smb.share}, {@code smb.folder}) aprakstam
+     */
+    public SMBImageSource(String id, SMBImageClient client, SMBMirror mirror, Properties config,
+                          Consumer<String> status) {
+        this.id = id;
+        this.client = client;
+        this.mirror = mirror;
+        this.description = "SMB: " + config.getProperty("smb.server") + "/" +
+                           config.getProperty("smb.share") + "/" + config.getProperty("smb.folder");
+        this.status = status;
+        // Attēli vienmēr tiek rādīti no lokālās kopijas, arī tad, ja serveris nav pieejams
+        publish();
+    }
+
+    public SMBImageClient getClient() {
+        return client;
+    }
+
+    public SMBMirror getMirror() {
+        return mirror;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public ImageInfo.Source getKind() {
+        return ImageInfo.Source.SMB;
+    }
+
+    @Override
+    public void start(Runnable onChanged) {
+        // Izmaiņām sekot nevar - tikai periodiskā pārbaude
+    }
+
+    @Override
+    public boolean check() {
+        SMBConnectionSupervisor supervisor = client.getSupervisor();
+        if (client.isConnected()) {
+            // Veselības pārbaude; nedzīvs savienojums tiek aizvērts
+            client.probe();
+        }
+        if (!client.isConnected()) {
+            if (client.connect()) {
+                status.accept(connectedBefore
+                        ? id + " savienojums atjaunots (atkārtoti savienojumi: " + supervisor.getReconnectCount() + ")"
+                        : id + " savienojums izveidots");
+            } else {
+                status.accept(connectedBefore
+                        ? id + " nav pieejams (" + supervisor.getState() +
+                          ", nākamais mēģinājums pēc " + supervisor.getSecondsUntilRetry() + " s)"
+                        : id + " savienojums neizdevās");
+                return false;
+            }
+        }
+        connectedBefore = true;
+
+        // Saraksts tiek atjaunots tikai tad, ja lokālā kopija mainījās
+        try {
+            List<SMBImageClient.SMBImageInfo> remote = client.listImages();
+            if (remote == null || !mirror.sync(remote, client)) {
+                return false;
+            }
+        } catch (Exception e) {
+            status.accept("Kļūda ielādējot " + id + " attēlus: " + e.getMessage());
+            return false;
+        }
+        publish();
+        return true;
+    }
+
+    private void publish() {
+        List<SMBImageClient.SMBImageInfo> entries = mirror.getEntries();
+        List<ImageInfo> images = new ArrayList<>(entries.size());
+        Map<String, Path> files = new HashMap<>();
+        Map<ImageInfo, String> hashes = new HashMap<>();
+        for (SMBImageClient.SMBImageInfo smbImage : entries) {
+            ImageInfo info = new ImageInfo(
+                smbImage.getFileName(),
+                ImageInfo.Source.SMB,
+                id,
+                smbImage.getRemotePath(),
+                smbImage.getLastModified(),
+                smbImage.getFileSize()
+            );
+            images.add(info);
+            files.put(info.getPath(), mirror.getLocalFile(info.getPath()));
+            if (smbImage.getHash() != null) {
+                hashes.put(info, smbImage.getHash());
+            }
+        }
+        localFiles = files;
+        manifestHashes = hashes;
+        snapshot = Collections.unmodifiableList(images);
+        status.accept("Ielādēti " + images.size() + " attēli no " + id);
+    }
+
+    @Override
+    public List<ImageInfo> list() {
+        return snapshot;
+    }
+
+    @Override
+    public Path getLocalFile(ImageInfo info) {
+        return localFiles.get(info.getPath());
+    }
+
+    @Override
+    public String getContentHash(ImageInfo info) {
+        return manifestHashes.get(info);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return client.isConnected();
+    }
+
+    @Override
+    public String describe() {
+        return description;
+    }
+
+    @Override
+    public void stop() {
+        client.disconnect();
+    }
+}
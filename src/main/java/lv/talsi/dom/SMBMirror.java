@@ -0,0 +1,339 @@
+package lv.talsi.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Lokāla SMB mapes kopija uz diska.
+ *
+ * Attēli vienmēr tiek rādīti no lokālā diska; no servera tiek lejupielādēti
+ * tikai jauni vai mainīti faili (pēc ceļa, izmaiņu laika un izmēra). Saraksts
+ * tiek saglabāts indeksa failā, tāpēc pēc restartēšanas vai servera
+ * nepieejamības ekrāns turpina rādīt pēdējo zināmo saturu.
+ *
+ * Lasītāji (katalogs, relejs) redz nemainīgu {@link Snapshot}, tāpēc tos
+ * neaizkavē lejupielāde; spoguļa atslēga tiek turēta tikai, piemērojot izmaiņas.
+ */
+class SMBMirror {
+
+    private static final String INDEX_FILE = "index.properties";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path folder;
+    // Aizsargā spoguļa atslēga; lasītājiem tiek publicēts snapshot
+    private final Map<String, SMBImageClient.SMBImageInfo> entries = new LinkedHashMap<>();
+    // Palielinās ar katru izmaiņu; sākas ar laiku, lai pēc restartēšanas neatkārtotos
+    private long generation = System.currentTimeMillis();
+    private volatile Snapshot snapshot = new Snapshot(generation, new LinkedHashMap<>());
+    // Vienlaikus notiek ne vairāk kā viena saskaņošana
+    private final Object syncLock = new Object();
+
+    /**
+     * Nemainīgs spoguļa stāvoklis: saturs un tā versija kopā.
+     */
+    static final class Snapshot {
+
+        private final long generation;
+        private final Map<String, SMBImageClient.SMBImageInfo> entries;
+
+        private Snapshot(long generation, Map<String, SMBImageClient.SMBImageInfo> entries) {
+            this.generation = generation;
+            this.entries = Collections.unmodifiableMap(entries);
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public Collection<SMBImageClient.SMBImageInfo> getEntries() {
+            return entries.values();
+        }
+
+        SMBImageClient.SMBImageInfo get(String remotePath) {
+            return entries.get(remotePath);
+        }
+    }
+
+    public SMBMirror(Properties config) {
+        this.folder = Paths.get(config.getProperty("smb.mirror.folder", "smb-cache"));
+    }
+
+    /**
+     * Ielādē iepriekš saglabāto indeksu; faili, kuru uz diska vairs nav, tiek ignorēti.
+     */
+    public void load() {
+        synchronized (syncLock) {
+            synchronized (this) {
+                loadIndex();
+            }
+        }
+    }
+
+    private void loadIndex() {
+        entries.clear();
+        Path indexFile = folder.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        Properties index = new Properties();
+        try (InputStream input = Files.newInputStream(indexFile)) {
+            index.load(input);
+        } catch (IOException e) {
+            log("Kļūda nolasot spoguļa indeksu: " + e.getMessage());
+            return;
+        }
+
+        for (String remotePath : index.stringPropertyNames()) {
+            String[] parts = index.getProperty(remotePath).split(";", 3);
+            if (parts.length < 3) {
+                continue;
+            }
+            try {
+                SMBImageClient.SMBImageInfo info = new SMBImageClient.SMBImageInfo(
+                        parts[2], remotePath, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                if (Files.exists(localPath(info))) {
+                    entries.put(remotePath, info);
+                }
+            } catch (NumberFormatException e) {
+                // Bojāts ieraksts - lejupielādēt no jauna
+            }
+        }
+        generation++;
+        publish();
+        log("Spogulī atrasti " + entries.size() + " attēli");
+    }
+
+    /**
+     * Saskaņo spoguli ar servera sarakstu: lejupielādē jaunos un mainītos
+     * failus, dzēš vairs neesošos.
+     *
+     * @return true, ja spoguļa saturs mainījās
+     */
+    public boolean sync(List<SMBImageClient.SMBImageInfo> remote, SMBImageClient client) {
+        synchronized (syncLock) {
+            return syncLocked(remote, client);
+        }
+    }
+
+    private boolean syncLocked(List<SMBImageClient.SMBImageInfo> remote, SMBImageClient client) {
+        try {
+            Files.createDirectories(folder);
+        } catch (IOException e) {
+            log("Nevar izveidot spoguļa mapi: " + folder + " - " + e.getMessage());
+            return false;
+        }
+
+        // Saturu maina tikai saskaņošana, tāpēc plānu var veidot no momentuzņēmuma
+        Snapshot current = snapshot;
+        Set<String> remotePaths = new HashSet<>();
+        List<SMBImageClient.SMBImageInfo> retimed = new ArrayList<>();
+        List<SMBImageClient.SMBImageInfo> toDownload = new ArrayList<>();
+
+        for (SMBImageClient.SMBImageInfo info : remote) {
+            remotePaths.add(info.getRemotePath());
+            if (isCurrent(current, info)) {
+                continue;
+            }
+            if (hasContent(current, info)) {
+                // Mainījies tikai laiks - saturs pēc manifesta jau ir spogulī
+                retimed.add(info);
+            } else {
+                toDownload.add(info);
+            }
+        }
+
+        // Jaunie un mainītie faili tiek lejupielādēti paralēli pagaidu failos, neturot spoguļa atslēgu
+        List<SMBImageClient.SMBImageInfo> downloaded = new ArrayList<>();
+        if (!toDownload.isEmpty()) {
+            log("Lejupielādē " + toDownload.size() + " attēlus");
+            for (SMBImageClient.SMBImageInfo info : client.downloadAll(toDownload, this::tempPath)) {
+                if (!matchesHash(info, tempPath(info))) {
+                    // Manifests neatbilst failam - nākamreiz nolasīt visu mapi
+                    log("Lejupielādētais fails neatbilst manifestam: " + info.getFileName());
+                    deleteTemp(info);
+                    client.requestFullListing();
+                    continue;
+                }
+                downloaded.add(info);
+            }
+        }
+
+        synchronized (this) {
+            boolean changed = false;
+            for (SMBImageClient.SMBImageInfo info : retimed) {
+                entries.put(info.getRemotePath(), info);
+                changed = true;
+            }
+            for (SMBImageClient.SMBImageInfo info : downloaded) {
+                if (commit(info)) {
+                    entries.put(info.getRemotePath(), info);
+                    changed = true;
+                }
+            }
+            for (SMBImageClient.SMBImageInfo info : new ArrayList<>(entries.values())) {
+                if (!remotePaths.contains(info.getRemotePath())) {
+                    entries.remove(info.getRemotePath());
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                generation++;
+                publish();
+                saveIndex();
+                collectGarbage();
+            }
+            return changed;
+        }
+    }
+
+    private void publish() {
+        snapshot = new Snapshot(generation, new LinkedHashMap<>(entries));
+    }
+
+    /**
+     * Pašreizējais saturs un versija; nekad negaida uz saskaņošanu.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public List<SMBImageClient.SMBImageInfo> getEntries() {
+        return new ArrayList<>(snapshot.getEntries());
+    }
+
+    /**
+     * Satura versija: mainās ikreiz, kad mainās spoguļa saturs.
+     */
+    public long getGeneration() {
+        return snapshot.getGeneration();
+    }
+
+    /**
+     * Lokālais fails attēlam vai null, ja tas vēl nav lejupielādēts.
+     */
+    public Path getLocalFile(String remotePath) {
+        SMBImageClient.SMBImageInfo info = snapshot.get(remotePath);
+        return info != null ? localPath(info) : null;
+    }
+
+    private static boolean isCurrent(Snapshot current, SMBImageClient.SMBImageInfo info) {
+        SMBImageClient.SMBImageInfo local = current.get(info.getRemotePath());
+        return local != null &&
+               local.getLastModified() == info.getLastModified() &&
+               local.getFileSize() == info.getFileSize();
+    }
+
+    /**
+     * Vai spogulī jau ir fails ar manifestā norādīto saturu (tas pats izmērs un SHA-256).
+     */
+    private boolean hasContent(Snapshot current, SMBImageClient.SMBImageInfo info) {
+        SMBImageClient.SMBImageInfo local = current.get(info.getRemotePath());
+        if (info.getHash() == null || local == null || local.getFileSize() != info.getFileSize()) {
+            return false;
+        }
+        return matchesHash(info, localPath(local));
+    }
+
+    private boolean matchesHash(SMBImageClient.SMBImageInfo info, Path file) {
+        if (info.getHash() == null) {
+            return true;
+        }
+        try {
+            return info.getHash().equalsIgnoreCase(ContentManifest.sha256(file));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deleteTemp(SMBImageClient.SMBImageInfo info) {
+        try {
+            Files.deleteIfExists(tempPath(info));
+        } catch (IOException ignored) {
+            // Tiks izdzēsts nākamajā tīrīšanā
+        }
+    }
+
+    /**
+     * Atomāri aizstāj lokālo failu ar lejupielādēto pagaidu failu.
+     */
+    private boolean commit(SMBImageClient.SMBImageInfo info) {
+        Path temp = tempPath(info);
+        try {
+            Files.move(temp, localPath(info), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            log("Kļūda saglabājot spogulī: " + info.getFileName() + " - " + e.getMessage());
+            deleteTemp(info);
+            return false;
+        }
+    }
+
+    private void saveIndex() {
+        Properties index = new Properties();
+        for (SMBImageClient.SMBImageInfo info : entries.values()) {
+            index.setProperty(info.getRemotePath(),
+                    info.getLastModified() + ";" + info.getFileSize() + ";" + info.getFileName());
+        }
+
+        Path indexFile = folder.resolve(INDEX_FILE);
+        Path temp = folder.resolve(INDEX_FILE + TEMP_SUFFIX);
+        try {
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                index.store(output, "SMB spoguļa indekss");
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log("Kļūda saglabājot spoguļa indeksu: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dzēš failus, uz kuriem indekss vairs neattiecas (arī pamestus pagaidu failus).
+     */
+    private void collectGarbage() {
+        Set<Path> keep = new HashSet<>();
+        keep.add(folder.resolve(INDEX_FILE));
+        for (SMBImageClient.SMBImageInfo info : entries.values()) {
+            keep.add(localPath(info));
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path file : stream) {
+                if (!keep.contains(file) && Files.isRegularFile(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log("Kļūda tīrot spoguli: " + e.getMessage());
+        }
+    }
+
+    private Path localPath(SMBImageClient.SMBImageInfo info) {
+        return folder.resolve(info.getFileName());
+    }
+
+    private Path tempPath(SMBImageClient.SMBImageInfo info) {
+        return folder.resolve(info.getFileName() + TEMP_SUFFIX);
+    }
+
+    private void log(String message) {
+        AsyncLog.log("SMB spogulis", message);
+    }
+}
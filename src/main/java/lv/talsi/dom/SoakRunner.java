@@ -0,0 +1,362 @@
+package lv.talsi.dom;
+
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bezgalvas izturības tests ar resursu noplūžu uzskaiti.
+ *
+ * Darbina to pašu slaidrādes dzinēju kā ekrāns ({@link ImageCatalog},
+ * {@link ImageLoader}, {@link ImagePrefetcher}, {@link PlaylistCursor}), bet
+ * bez JavaFX skatuves un paātrinātā tempā: slaidi tiek pārslēgti uzreiz,
+ * katalogs tiek pārbaudīts ik pēc dažām sekundes daļām, un sintētiskā lokālā
+ * mape un SMB aizstājējs ({@link FolderSMBImageClient}) tiek nepārtraukti
+ * mainīti (jauni, mainīti, dzēsti un bojāti faili).
+ *
+ * Ik pēc {@code soak.sample.every} slaidiem tiek mērīti atvērtie failu
+ * deskriptori, atvērtie SMB faili, pavedieni, heap pēc GC un dekodēto attēlu
+ * atmiņa. Ja pēc iesildīšanās kāds no tiem pastāvīgi aug, process beidzas ar
+ * kodu 1.
+ *
+ * Palaišana: {@code mvn -Psoak verify} vai
+ * {@code java -Djava.awt.headless=true -Dprism.order=sw -cp ... lv.talsi.dom.SoakRunner}.
+ * Parametri (sistēmas īpašības): soak.cycles, soak.images, soak.sample.every,
+ * soak.mutate.every, soak.slide.ms, soak.check.ms, soak.cache.mb, soak.dir,
+ * soak.verbose.
+ */
+public class SoakRunner {
+
+    private static final int IMAGE_WIDTH = 640;
+    private static final int IMAGE_HEIGHT = 480;
+    private static final long LOAD_TIMEOUT_SECONDS = 30;
+    // Pirmā mērījumu daļa netiek vērtēta (kešatmiņa un JIT vēl pildās)
+    private static final double WARMUP_FRACTION = 0.2;
+
+    private final int cycles;
+    private final int imageCount;
+    private final int sampleEvery;
+    private final int mutateEvery;
+    private final long slideMillis;
+    private final long checkMillis;
+    private final long cacheMaxBytes;
+    private final boolean verbose;
+    private final Path dir;
+
+    private final Random random = new Random(42);
+    private final List<Sample> samples = new ArrayList<>();
+    private int fileCounter;
+
+    private FolderSMBImageClient smbClient;
+    private ImageCache imageCache;
+    private ImageCatalog catalog;
+    private ImagePrefetcher prefetcher;
+
+    SoakRunner(Path dir) {
+        this.dir = dir;
+        this.cycles = Integer.getInteger("soak.cycles", 20000);
+        this.imageCount = Integer.getInteger("soak.images", 40);
+        this.sampleEvery = Integer.getInteger("soak.sample.every", 500);
+        this.mutateEvery = Integer.getInteger("soak.mutate.every", 50);
+        this.slideMillis = Long.getLong("soak.slide.ms", 0);
+        this.checkMillis = Long.getLong("soak.check.ms", 250);
+        this.cacheMaxBytes = Long.getLong("soak.cache.mb", 32) * 1024 * 1024;
+        this.verbose = Boolean.getBoolean("soak.verbose");
+    }
+
+    public static void main(String[] args) throws Exception {
+        String dirProperty = System.getProperty("soak.dir");
+        Path dir = dirProperty != null ? Paths.get(dirProperty) : Files.createTempDirectory("infoekrani-soak");
+
+        List<String> failures = new SoakRunner(dir).run();
+        if (failures.isEmpty()) {
+            log("Izdevās - resursu noplūdes nav atrastas");
+            System.exit(0);
+        }
+        for (String failure : failures) {
+            System.err.println("NOPLŪDE: " + failure);
+        }
+        System.err.println("IZTURĪBAS TESTS NEIZDEVĀS (" + failures.size() + " problēmas), dati: " + dir);
+        System.exit(1);
+    }
+
+    List<String> run() throws Exception {
+        File localFolder = dir.resolve("images").toFile();
+        File remoteFolder = dir.resolve("smb").toFile();
+        localFolder.mkdirs();
+        remoteFolder.mkdirs();
+        for (int i = 0; i < imageCount; i++) {
+            writeImage(localFolder, newName());
+            writeImage(remoteFolder, newName());
+        }
+
+        Properties config = new Properties();
+        config.setProperty("mode", "hybrid");
+        config.setProperty("smb.folder", "Display");
+        config.setProperty("smb.mirror.folder", dir.resolve("smb-cache").toString());
+
+        Consumer<String> status = verbose ? SoakRunner::log : message -> { };
+        smbClient = new FolderSMBImageClient(config, remoteFolder);
+        SMBMirror smbMirror = new SMBMirror(config);
+        smbMirror.load();
+        imageCache = new ImageCache(cacheMaxBytes);
+        List<ImageSource> sources = Arrays.asList(
+                new SMBImageSource(ImageInfo.Source.SMB.name(), smbClient, smbMirror, config, status),
+                new LocalImageSource(ImageInfo.Source.LOCAL.name(), localFolder, 100, status));
+        catalog = new ImageCatalog(sources, imageCache,
+                                   new ContentHashes(dir.resolve("state").resolve("content-hashes.properties")),
+                                   status, 20_000);
+
+        ImageDecoder decoder = new ImageDecoder(100_000_000L, 8_300_000L);
+        decoder.setTargetSize(1920, 1080);
+        ImageLoader loader = new ImageLoader(catalog, decoder, imageCache, null, status);
+        prefetcher = new ImagePrefetcher(loader::load, 3, 2);
+
+        log(cycles + " slaidi, " + (2 * imageCount) + " attēli, mape: " + dir);
+        catalog.start(checkMillis, checkMillis);
+        try {
+            runSlideshow();
+        } finally {
+            prefetcher.shutdown();
+            catalog.stop();
+        }
+        return evaluate();
+    }
+
+    private void runSlideshow() throws Exception {
+        PlaylistCursor cursor = new PlaylistCursor();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOAD_TIMEOUT_SECONDS);
+
+        int shown = 0;
+        int skipped = 0;
+        while (shown < cycles) {
+            cursor.sync(catalog.getPlaylist());
+            ImageInfo info = cursor.current();
+            if (info == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Katalogs palika tukšs");
+                }
+                Thread.sleep(10);
+                continue;
+            }
+
+            Image image;
+            try {
+                image = prefetcher.request(info).get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (CancellationException e) {
+                // Katalogs pa to laiku mainījās
+                prefetcher.forget(info);
+                continue;
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IllegalStateException("Attēls netika ielādēts: " + info.getLocation(), e);
+            }
+
+            if (image == null) {
+                skipped++;
+                prefetcher.forget(info);
+                catalog.markBroken(info);
+                continue;
+            }
+
+            cursor.advance();
+            prefetcher.prefetch(cursor.getPlaylist().getImages(), cursor.getIndex());
+            shown++;
+
+            if (shown % mutateEvery == 0) {
+                mutate(dir.resolve(random.nextBoolean() ? "images" : "smb").toFile());
+            }
+            if (shown % sampleEvery == 0) {
+                sample(shown, skipped);
+            }
+            if (slideMillis > 0) {
+                Thread.sleep(slideMillis);
+            }
+        }
+    }
+
+    /**
+     * Viena nejauša izmaiņa mapē; attēlu skaits paliek ap sākotnējo.
+     */
+    private void mutate(File folder) throws IOException {
+        File[] files = folder.listFiles((d, name) -> ImageInfo.isImageFile(name));
+        if (files == null) {
+            return;
+        }
+        int action = random.nextInt(10);
+        if (files.length > imageCount * 5 / 4 || (action < 3 && files.length > imageCount * 3 / 4)) {
+            files[random.nextInt(files.length)].delete();
+        } else if (action < 6) {
+            writeImage(folder, newName());
+        } else if (action < 9) {
+            writeImage(folder, files[random.nextInt(files.length)].getName());
+        } else {
+            // Vienlaikus mapē ir ne vairāk kā viens bojāts fails
+            for (File file : files) {
+                if (file.getName().startsWith("bojats-")) {
+                    file.delete();
+                }
+            }
+            byte[] garbage = new byte[1024 + random.nextInt(4096)];
+            random.nextBytes(garbage);
+            Files.write(new File(folder, "bojats-" + newName()).toPath(), garbage);
+        }
+    }
+
+    private String newName() {
+        return String.format("slaids-%06d.%s", fileCounter++, random.nextBoolean() ? "png" : "jpg");
+    }
+
+    private void writeImage(File folder, String name) throws IOException {
+        BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(random.nextInt(0xFFFFFF)));
+        g.fillRect(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+        for (int i = 0; i < 20; i++) {
+            g.setColor(new Color(random.nextInt(0xFFFFFF)));
+            g.fillOval(random.nextInt(IMAGE_WIDTH), random.nextInt(IMAGE_HEIGHT), 10 + random.nextInt(200), 10 + random.nextInt(200));
+        }
+        g.dispose();
+
+        // Raksta pagaidu failā, lai katalogs neredzētu pusgatavu attēlu
+        String format = name.endsWith(".png") ? "png" : "jpg";
+        File temp = new File(folder, name + ".tmp");
+        ImageIO.write(image, format, temp);
+        Files.move(temp.toPath(), new File(folder, name).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void sample(int shown, int skipped) {
+        System.gc();
+        System.gc();
+        Sample sample = new Sample(
+                shown,
+                openFileDescriptors(),
+                smbClient.getOpenHandleCount(),
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(),
+                imageCache.getCurrentBytes(),
+                catalog.getPlaylist().size(),
+                catalog.getBrokenCount());
+        samples.add(sample);
+        log(sample + ", izlaisti " + skipped);
+    }
+
+    private static long openFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    private List<String> evaluate() {
+        List<String> failures = new ArrayList<>();
+
+        for (Sample sample : samples) {
+            if (sample.cacheBytes > cacheMaxBytes) {
+                failures.add("kešatmiņa " + sample.cacheBytes + " B pārsniedz limitu " + cacheMaxBytes + " B (slaids " + sample.cycle + ")");
+                break;
+            }
+        }
+        if (smbClient.getOpenHandleCount() != 0) {
+            failures.add("pēc apturēšanas palikuši atvērti " + smbClient.getOpenHandleCount() + " SMB faili");
+        }
+
+        int first = (int) (samples.size() * WARMUP_FRACTION);
+        int window = (samples.size() - first) / 4;
+        if (window < 1) {
+            log("Par maz mērījumu augšanas novērtēšanai (" + samples.size() + ")");
+            return failures;
+        }
+        List<Sample> early = samples.subList(first, first + window);
+        List<Sample> late = samples.subList(samples.size() - window, samples.size());
+
+        checkGrowth(failures, "failu deskriptori", early, late, s -> s.fileDescriptors, 16);
+        checkGrowth(failures, "SMB faili", early, late, s -> s.smbHandles, 2);
+        checkGrowth(failures, "pavedieni", early, late, s -> s.threads, 4);
+        checkGrowth(failures, "heap pēc GC", early, late, s -> s.heapBytes, 32L * 1024 * 1024);
+        checkGrowth(failures, "dekodēto attēlu atmiņa", early, late, s -> s.cacheBytes, cacheMaxBytes / 4);
+        checkGrowth(failures, "bojāto attēlu saraksts", early, late, s -> s.broken, 4);
+        return failures;
+    }
+
+    /**
+     * Augšana bez robežām: vēlākā loga mazākā vērtība pārsniedz agrākā loga
+     * lielāko vērtību vairāk nekā par pieļaujamo.
+     */
+    private static void checkGrowth(List<String> failures, String name, List<Sample> early, List<Sample> late,
+                                    ToLongFunction<Sample> metric, long tolerance) {
+        long earlyMax = early.stream().mapToLong(metric).max().orElse(0);
+        long lateMin = late.stream().mapToLong(metric).min().orElse(0);
+        if (earlyMax < 0) {
+            return;
+        }
+        long growth = lateMin - earlyMax;
+        if (growth > tolerance) {
+            failures.add(name + " auga no " + earlyMax + " līdz " + lateMin + " (pieļaujams +" + tolerance + ")");
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println("[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "] Izturības tests: " + message);
+    }
+
+    private static class Sample {
+        final int cycle;
+        final long fileDescriptors;
+        final long smbHandles;
+        final long threads;
+        final long heapBytes;
+        final long cacheBytes;
+        final long catalogSize;
+        final long broken;
+
+        Sample(int cycle, long fileDescriptors, long smbHandles, long threads, long heapBytes,
+               long cacheBytes, long catalogSize, long broken) {
+            this.cycle = cycle;
+            this.fileDescriptors = fileDescriptors;
+            this.smbHandles = smbHandles;
+            this.threads = threads;
+            this.heapBytes = heapBytes;
+            this.cacheBytes = cacheBytes;
+            this.catalogSize = catalogSize;
+            this.broken = broken;
+        }
+
+        @Override
+        public String toString() {
+            return "slaids " + cycle +
+                   ": deskriptori " + fileDescriptors +
+                   ", SMB faili " + smbHandles +
+                   ", pavedieni " + threads +
+                   ", heap " + (heapBytes / (1024 * 1024)) + " MB" +
+                   ", kešatmiņa " + (cacheBytes / (1024 * 1024)) + " MB" +
+                   ", katalogs " + catalogSize +
+                   ", bojāti " + broken;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package lv.talsi.dom;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Apvieno statusa ziņojumus: JavaFX rindā vienlaikus ir ne vairāk kā viens
+ * atjauninājums, un tas parāda jaunāko ziņojumu. Starpposma ziņojumi netiek
+ * rādīti (tie paliek žurnālā).
+ *
+ * {@link #post(String)} drīkst izsaukt no jebkura pavediena.
+ */
+class StatusUpdater {
+
+    private final Consumer<String> target;
+    private final AtomicReference<String> latest = new AtomicReference<>();
+    private final Runnable apply = this::apply;
+
+    /**
+     * @param target izsaukts JavaFX pavedienā ar jaunāko ziņojumu
+     */
+    public StatusUpdater(Consumer<String> target) {
+        this.target = target;
+    }
+
+    public void post(String message) {
+        // Jauns JavaFX uzdevums tikai tad, ja iepriekšējais jau paņēma savu ziņojumu
+        if (latest.getAndSet(message) == null) {
+            Platform.runLater(apply);
+        }
+    }
+
+    private void apply() {
+        String message = latest.getAndSet(null);
+        if (message != null) {
+            target.accept(message);
+        }
+    }
+}